@@ -1,11 +1,17 @@
 package pippin;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Map;
-import java.util.Scanner;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -21,7 +27,7 @@ public class Assembler {
 	 /**
 	 * lists the mnemonics of the instructions that allow indirect addressing
 	 */
-	 public static Set<String> allowsIndirect = new TreeSet<String>(); 
+	 public static Set<String> allowsIndirect = new TreeSet<String>();
 	 static {
 		 noArgument.add("HALT");
 		 noArgument.add("NOP");
@@ -34,172 +40,313 @@ public class Assembler {
 		 allowsImmediate.add("AND");
 		 allowsImmediate.add("JUMP");
 		 allowsImmediate.add("JMPZ");
-		 allowsImmediate.add("ROT");
 		 allowsIndirect.add("LOD");
 		 allowsIndirect.add("STO");
 		 allowsIndirect.add("ADD");
 		 allowsIndirect.add("SUB");
 		 allowsIndirect.add("MUL");
 		 allowsIndirect.add("DIV");
-		 } 
+		 }
+	 private static final int BUFFER_SIZE = 1 << 16;
 	 /**
 	  * Method to assemble a file to its binary representation. If the input has errors
 	  * a list of errors will be written to the errors map. If there are errors,
 	  * they appear as a map with the line number as the key and the description of the error
 	  * as the value. If the input or output cannot be opened, the "line number" key is 0.
+	  * The output is a pexe text file, or a binary executable (see BinaryFormat) if its
+	  * name ends in .pbin. It is written next to the output file while the source is
+	  * read and only replaces the output file if there were no errors.
 	  * @param input the source assembly language file
 	  * @param output the binary version of the program if the souce program is
 	  * correctly formatted
 	  * @param errors the errors map
-	  * @return
+	  * @return true if the source had no errors and the output was written
 	  */
 	  public static boolean assemble(File input, File output, Map<Integer, String> errors) {
-		  ArrayList<String> inputText = new ArrayList<>();
-		  ArrayList<String> inCode = new ArrayList<>();
-		  ArrayList<String> inData = new ArrayList<>();
-		  ArrayList<String> outCode = new ArrayList<>();
-		  ArrayList<String> outData = new ArrayList<>();
 		  if(errors == null){ throw new IllegalArgumentException("Coding error: the error map is null");}
-		  //make an error checking function for the different types and syntax
-		  try (Scanner inp = new Scanner(input)) {
-			  // while loop reading the lines from input in inputText
-			  while(inp.hasNextLine()){
-				  inputText.add(inp.nextLine());
-			  }
+		  Reader source;
+		  try {
+			  source = new InputStreamReader(new FileInputStream(input), StandardCharsets.ISO_8859_1);
 		  } catch (FileNotFoundException e) {
 			  errors.put(0, "Error: Unable to open the input file");
+			  return false;
 		  }
-		  int blankLn = 0;
-		  for(int i = 0; i<inputText.size(); i++){
-			  if(inputText.get(i).trim().length() > 0){
-				  if(inputText.get(i).charAt(0) == ' '){
-					  //just spaces or tabs too?
-					  errors.put(i+1, "Error on line " + (i+1) + ": starts with white space");
-				  }
+		  File temp = new File(output.getAbsoluteFile().getParentFile(), output.getName() + ".tmp");
+		  try (Reader in = source) {
+			  try (ProgramSink sink = BinaryFormat.isBinaryName(output) ? new BinaryFormat.Writer(temp)
+					  : new TextProgramWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.US_ASCII))) {
+				  assemble(in, sink, errors);
 			  }
-		  } 
-		  int blankLnNum = -10;
-		  for(int i = 0; i<inputText.size(); i++){
-			  if(inputText.get(i).trim().length() == 0 && blankLnNum <0){
-				  blankLnNum = i;
-			  }
-			  if(blankLnNum>0 && inputText.get(i).trim().length() > 0){
-				  errors.put(blankLnNum, "Error on line " + blankLnNum + ": illegal blank line");
-				  blankLnNum = -10;
+			  if(errors.isEmpty()) {
+				  Files.move(temp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
 			  }
+		  } catch (IOException e) {
+			  errors.putIfAbsent(0, "Error: Unable to write the assembled program to the output file");
+		  } finally {
+			  temp.delete();
 		  }
+		  return errors.isEmpty();
+	  }
+
+	  /**
+	   * Assembles a source in one pass, giving each instruction and data cell to
+	   * the sink as soon as its line is read. Once an error is found nothing more
+	   * is given to the sink, but the rest of the source is still checked. Each
+	   * line gets at most one error, the first one found.
+	   * @param input the source text, which is not closed
+	   * @param sink receives the program while there are no errors
+	   * @param errors the errors map, keyed by line number
+	   * @throws IOException if the input cannot be read or the sink cannot write
+	   */
+	  public static void assemble(Reader input, ProgramSink sink, Map<Integer, String> errors) throws IOException {
+		  if(errors == null){ throw new IllegalArgumentException("Coding error: the error map is null");}
+		  Lines lines = new Lines(input);
 		  boolean data = false;
-		  for(int i = 0; i<inputText.size(); i++){
-			  if(data == false){
-				  if(inputText.get(i).trim().equalsIgnoreCase("DATA")){
-					  if(inputText.get(i).trim().equals("DATA")){
-						  data = true;
-					  }
-					  else{
-						  errors.put(i+1, "Error on line " + (i+1) + "DATA is incorrectly labeled");
-					  }
+		  int firstBlank = 0; // the first of the blank lines just read, 0 if none
+		  while(lines.next()) {
+			  int lineNumber = lines.number;
+			  if(lines.isBlank()) {
+				  if(firstBlank == 0) {
+					  firstBlank = lineNumber;
 				  }
-				  else{
-					  inCode.add(inputText.get(i).trim());
+				  continue;
+			  }
+			  // blank lines are only allowed at the end of the file
+			  if(firstBlank > 0) {
+				  error(errors, firstBlank, "illegal blank line");
+				  firstBlank = 0;
+			  }
+			  if(lines.text[0] == ' ' || lines.text[0] == '\t') {
+				  error(errors, lineNumber, "starts with white space");
+			  }
+			  int count = lines.tokenize();
+			  if(count == 1 && lines.tokenEquals(0, "DATA", true)) {
+				  if(!lines.tokenEquals(0, "DATA", false)) {
+					  error(errors, lineNumber, "DATA is incorrectly labeled");
+				  } else if(data) {
+					  error(errors, lineNumber, "DATA appears more than once");
 				  }
+				  data = true;
+			  } else if(data) {
+				  dataLine(lines, count, sink, errors);
+			  } else {
+				  codeLine(lines, count, sink, errors);
 			  }
-			  else{
-				  inData.add(inputText.get(i).trim());
+		  }
+	  }
+
+	  private static void codeLine(Lines lines, int count, ProgramSink sink, Map<Integer, String> errors)
+			  throws IOException {
+		  int lineNumber = lines.number;
+		  String mnemonic = lines.token(0);
+		  Integer op = InstructionMap.opcode.get(mnemonic);
+		  if(op == null) {
+			  if(InstructionMap.opcode.containsKey(mnemonic.toUpperCase())) {
+				  error(errors, lineNumber, "mnemonics must be in uppercase");
+			  } else {
+				  error(errors, lineNumber, "illegal mnemonic");
 			  }
+			  return;
 		  }
-		  for(int i =0; i<inCode.size(); i++){
-			  String[] parts = inCode.get(i).split("\\s+");
-			  if(!InstructionMap.opcode.containsKey(parts[0].toUpperCase())){
-				  errors.put(i+1,"Error on line " + (i+1) + " illegal mnemonic");;
+		  if(noArgument.contains(mnemonic)) {
+			  if(count > 1) {
+				  error(errors, lineNumber, mnemonic + " does not take arguments");
+			  } else if(errors.isEmpty()) {
+				  sink.instruction(op, 0, 0);
 			  }
-			  else{
-				  if(!InstructionMap.opcode.containsKey(parts[0])){
-					  errors.put(i+1,"Error on line " + (i+1) + " mnemonics must be in uppercase");
-				  }
-				  else {
-					  if(noArgument.contains(parts[0]) && parts.length > 1){
-						  errors.put(i+1,"Error on line " + (i+1) + "mnemonic does not take arguments");
-					  }
-					  else if(noArgument.contains(parts[0]) && parts.length == 1){
-						  outCode.add(Integer.toHexString(InstructionMap.opcode.get(parts[0])) + " 0 0");
-					  }
-					  else{
-						  if(parts[1].length() == 2 && parts[1] == "[["){
-							  if(allowsIndirect.contains(parts[0])){
-								 try{
-									  int arg = Integer.parseInt(parts[1].substring(2),16);
-									  outCode.add(Integer.toHexString(InstructionMap.opcode.get(parts[0])) +
-									  Integer.toHexString(arg).toUpperCase() + " 2");
-								  } catch(NumberFormatException e) {
-									  errors.put(i+1, "Error on line "+(i+1)+ ": indirect argument is not a hex number");
-								  } 
-							  }
-							  else {
-								  errors.put(i+1, "Error on line " + (i+1) + "Does not allow indirect addressing");
-							  }
-						  }
-						  if(parts[1].length() == 2 && parts[1].charAt(0) == '['){
-							  try{
-								  int arg = Integer.parseInt(parts[1].substring(2),16);
-								  outCode.add(Integer.toHexString(InstructionMap.opcode.get(parts[0])) +
-								  Integer.toHexString(arg).toUpperCase() + " 1");
-								 } catch(NumberFormatException e) {
-								  errors.put(i+1, "Error on line "+(i+1)+ ": direct argument is not a hex number");
-								 }
-						  }
-						  if(parts[1].length() == 2 && parts[1].charAt(0) != '['){
-							  if(allowsImmediate.contains(parts[0])){
-								  try{
-									  int arg = Integer.parseInt(parts[1].substring(2),16);
-									  outCode.add(Integer.toHexString(InstructionMap.opcode.get(parts[0])) +
-									  Integer.toHexString(arg).toUpperCase() + " 0");
-								  } catch(NumberFormatException e) {
-									  errors.put(i+1, "Error on line "+(i+1)+ ": immediate argument is not a hex number");
-								  }
-							  }
-							  else{
-								  errors.put(i+1, "Error on line " + (i+1)+ "allowsImmediate does not contain our value");
-								  
-							  }
+			  return;
+		  }
+		  if(count == 1) {
+			  error(errors, lineNumber, mnemonic + " is missing its argument");
+			  return;
+		  }
+		  if(count > 2) {
+			  error(errors, lineNumber, mnemonic + " takes only one argument");
+			  return;
+		  }
+		  int start = lines.starts[1];
+		  int end = lines.ends[1];
+		  int level = 0;
+		  while(level < 2 && start < end && lines.text[start] == '[') {
+			  level++;
+			  start++;
+		  }
+		  if(level == 0 && !allowsImmediate.contains(mnemonic)) {
+			  error(errors, lineNumber, mnemonic + " does not allow immediate addressing");
+			  return;
+		  }
+		  if(level == 2 && !allowsIndirect.contains(mnemonic)) {
+			  error(errors, lineNumber, mnemonic + " does not allow indirect addressing");
+			  return;
+		  }
+		  long arg = parseHex(lines.text, start, end);
+		  if(arg == BAD_NUMBER) {
+			  error(errors, lineNumber, "the argument is not a hex number");
+		  } else if(errors.isEmpty()) {
+			  sink.instruction(op, (int)arg, level);
+		  }
+	  }
+
+	  private static void dataLine(Lines lines, int count, ProgramSink sink, Map<Integer, String> errors)
+			  throws IOException {
+		  int lineNumber = lines.number;
+		  if(count != 2) {
+			  error(errors, lineNumber, "this is not an address/value pair");
+			  return;
+		  }
+		  long address = parseHex(lines.text, lines.starts[0], lines.ends[0]);
+		  long value = parseHex(lines.text, lines.starts[1], lines.ends[1]);
+		  if(address == BAD_NUMBER) {
+			  error(errors, lineNumber, "the address is not a hex number");
+		  } else if(value == BAD_NUMBER) {
+			  error(errors, lineNumber, "the value is not a hex number");
+		  } else if(errors.isEmpty()) {
+			  sink.data((int)address, (int)value);
+		  }
+	  }
+
+	  private static void error(Map<Integer, String> errors, int lineNumber, String message) {
+		  errors.putIfAbsent(lineNumber, "Error on line " + lineNumber + ": " + message);
+	  }
+
+	  private static final long BAD_NUMBER = Long.MIN_VALUE;
+
+	  /**
+	   * Parses a hex int with an optional sign, as Integer.parseInt(s, 16) does.
+	   * @return the value or BAD_NUMBER
+	   */
+	  private static long parseHex(char[] text, int start, int end) {
+		  boolean negative = false;
+		  if(start < end && (text[start] == '-' || text[start] == '+')) {
+			  negative = text[start] == '-';
+			  start++;
+		  }
+		  if(start == end) {
+			  return BAD_NUMBER;
+		  }
+		  long value = 0;
+		  for(int i = start; i < end; i++) {
+			  int digit = text[i] < 128 ? Character.digit(text[i], 16) : -1;
+			  if(digit < 0) {
+				  return BAD_NUMBER;
+			  }
+			  value = value * 16 + digit;
+			  if(value > 0x80000000L) {
+				  return BAD_NUMBER;
+			  }
+		  }
+		  value = negative ? -value : value;
+		  return value > Integer.MAX_VALUE ? BAD_NUMBER : value;
+	  }
+
+	  /**
+	   * Reads the source a line at a time into a reused char array and splits
+	   * the line into tokens at spaces and tabs, recording where each one starts
+	   * and ends instead of making Strings.
+	   */
+	  private static final class Lines {
+		  private final Reader input;
+		  private final char[] buffer = new char[BUFFER_SIZE];
+		  private int position = 0;
+		  private int limit = 0;
+		  char[] text = new char[256];
+		  int length;
+		  int number = 0;
+		  // only the first three tokens are recorded, enough to tell if there are too many
+		  final int[] starts = new int[3];
+		  final int[] ends = new int[3];
+
+		  Lines(Reader input) {
+			  this.input = input;
+		  }
+
+		  /**
+		   * @return false at the end of the input
+		   */
+		  boolean next() throws IOException {
+			  length = 0;
+			  boolean any = false;
+			  while(true) {
+				  if(position == limit) {
+					  limit = input.read(buffer);
+					  position = 0;
+					  if(limit <= 0) {
+						  limit = 0;
+						  if(any) {
+							  number++;
 						  }
+						  return any;
 					  }
 				  }
-				  
+				  char c = buffer[position++];
+				  any = true;
+				  if(c == '\n') {
+					  number++;
+					  return true;
+				  }
+				  if(c == '\r') {
+					  continue;
+				  }
+				  if(length == text.length) {
+					  char[] larger = new char[2 * length];
+					  System.arraycopy(text, 0, larger, 0, length);
+					  text = larger;
+				  }
+				  text[length++] = c;
 			  }
 		  }
-		  int offset = inCode.size() +1;
-		  for(int i = 0; i<inCode.size(); i++){
-			  String[] parts = inData.get(i).split("\\s+");
-			  // Loop through out data, what?
-			  if(parts.length != 2) {
-				  errors.put((offset+i), "Error on line " + (offset +i) + "This is not an address/value pair");
+
+		  boolean isBlank() {
+			  for(int i = 0; i < length; i++) {
+				  if(!Character.isWhitespace(text[i])) {
+					  return false;
+				  }
 			  }
-			  else {
-				  int addr = -1;
-				  int val = -1;
-				  try{
-					  addr = Integer.parseInt(parts[0],16);
-				  } catch(NumberFormatException e){
-					  errors.put((offset+i),"Error on line " + (offset + i) + "The address is not a hex number");
+			  return true;
+		  }
+
+		  /**
+		   * @return the number of tokens on the line
+		   */
+		  int tokenize() {
+			  int count = 0;
+			  int i = 0;
+			  while(true) {
+				  while(i < length && Character.isWhitespace(text[i])) {
+					  i++;
+				  }
+				  if(i == length) {
+					  return count;
 				  }
-				  try{
-					  val = Integer.parseInt(parts[1],16);
-				  } catch(NumberFormatException e){
-					  errors.put((offset+i),"Error on line " + (offset + i) + "The address is not a hex number");
+				  int start = i;
+				  while(i < length && !Character.isWhitespace(text[i])) {
+					  i++;
 				  }
-				  outData.add(Integer.toHexString(addr).toUpperCase() + " "
-						  + Integer.toHexString(val).toUpperCase());
+				  if(count < starts.length) {
+					  starts[count] = start;
+					  ends[count] = i;
+				  }
+				  count++;
 			  }
 		  }
-		  if(errors.size()==0) {
-			  try (PrintWriter outp = new PrintWriter(output)){
-			  for(String str : outCode) outp.println(str);
-			  outp.println(-1); // the separator where the source has DATA
-			  for(String str : outData) outp.println(str);
-			  } catch (FileNotFoundException e) {
-			  errors.put(0, "Error: Unable to write the assembled program to the output file");
+
+		  String token(int index) {
+			  return new String(text, starts[index], ends[index] - starts[index]);
+		  }
+
+		  boolean tokenEquals(int index, String word, boolean ignoreCase) {
+			  int start = starts[index];
+			  if(ends[index] - start != word.length()) {
+				  return false;
+			  }
+			  for(int i = 0; i < word.length(); i++) {
+				  char c = text[start + i];
+				  char w = word.charAt(i);
+				  if(c != w && !(ignoreCase && Character.toUpperCase(c) == Character.toUpperCase(w))) {
+					  return false;
+				  }
 			  }
+			  return true;
 		  }
-		  return true; // TRUE means there were no errors 
-	  } 
+	  }
 }
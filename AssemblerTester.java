@@ -0,0 +1,132 @@
+package pippin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class AssemblerTester {
+
+	private static final String PROGRAM = "LOD 1F\nSTO [1\nADD [[-2\nNOT\nJMPZ 0\nHALT\nDATA\n1 A\n2 -3\n\n\n";
+
+	private String assemble(String source, Map<Integer, String> errors) throws IOException {
+		StringWriter text = new StringWriter();
+		try(ProgramSink sink = new TextProgramWriter(text)) {
+			Assembler.assemble(new StringReader(source), sink, errors);
+		}
+		return text.toString().replace("\r\n", "\n");
+	}
+
+	@Test
+	// Tests the pexe text of a correct program, with blank lines at the end
+	public void testAssemble() throws IOException {
+		Map<Integer, String> errors = new TreeMap<>();
+		assertEquals("1 1F 0\n2 1 1\n3 FFFFFFFE 2\n8 0 0\nc 0 0\nf 0 0\n-1\n1 A\n2 FFFFFFFD\n",
+				assemble(PROGRAM, errors));
+		assertTrue(errors.isEmpty());
+	}
+
+	@Test
+	// Tests that each bad line is reported once with its line number
+	public void testErrors() throws IOException {
+		Map<Integer, String> errors = new TreeMap<>();
+		assemble("lod 1\nFOO 1\n LOD 1\nHALT 1\nSTO 1\nCMPZ [[1\nLOD\nLOD 1 2\n\nLOD [G\nData\n1\n5 5\n",
+				errors);
+		assertEquals(12, errors.size());
+		assertTrue(errors.get(1).contains("uppercase"));
+		assertTrue(errors.get(2).contains("illegal mnemonic"));
+		assertTrue(errors.get(3).contains("white space"));
+		assertTrue(errors.get(4).contains("does not take arguments"));
+		assertTrue(errors.get(5).contains("immediate"));
+		assertTrue(errors.get(6).contains("indirect"));
+		assertTrue(errors.get(7).contains("missing"));
+		assertTrue(errors.get(8).contains("only one argument"));
+		assertTrue(errors.get(9).contains("blank line"));
+		assertTrue(errors.get(10).contains("not a hex number"));
+		assertTrue(errors.get(11).contains("DATA"));
+		assertTrue(errors.get(12).contains("address/value"));
+		assertFalse(errors.containsKey(13));
+	}
+
+	@Test
+	// Tests that ROT only takes a direct address
+	public void testRotImmediate() throws IOException {
+		Map<Integer, String> errors = new TreeMap<>();
+		assemble("ROT 5\nHALT\n", errors);
+		assertEquals(1, errors.size());
+		assertTrue(errors.get(1).contains("immediate"));
+		errors.clear();
+		assemble("ROT [5\nHALT\n", errors);
+		assertTrue(errors.isEmpty());
+	}
+
+	@Test
+	// Tests assembling into memory and installing the program twice
+	public void testInstall() {
+		Map<Integer, String> errors = new TreeMap<>();
+		Program program = Program.assemble("LOD [1\nADD [2\nSTO [3\nHALT\nDATA\n1 5\n2 6\n", errors);
+		assertTrue(errors.isEmpty());
+		MachineModel model = new MachineModel(true);
+		for(int run = 0; run < 2; run++) {
+			model.install(program);
+			assertTrue(model.getVerificationErrors().isEmpty());
+			assertEquals(RunResult.HaltReason.HALTED, model.run(100).getReason());
+			assertEquals(11, model.getData(3));
+		}
+		assertEquals(4, program.getCode().getProgramSize());
+	}
+
+	@Test (expected=ArrayIndexOutOfBoundsException.class)
+	// Tests that a program longer than the code memory is not installed
+	public void testInstallTooLong() {
+		Map<Integer, String> errors = new TreeMap<>();
+		Program program = Program.assemble("NOP\nNOP\nNOP\nHALT\n", errors);
+		assertTrue(errors.isEmpty());
+		new MachineModel(false, Memory.DATA_SIZE, 3).install(program);
+	}
+
+	@Test
+	// Tests assembling files to both formats and that errors leave no output
+	public void testFiles() throws IOException {
+		File source = File.createTempFile("assembler", ".pasm");
+		File text = new File(source.getPath().replace(".pasm", ".pexe"));
+		File binary = new File(source.getPath().replace(".pasm", "." + BinaryFormat.EXTENSION));
+		source.deleteOnExit();
+		text.deleteOnExit();
+		binary.deleteOnExit();
+		try(PrintWriter out = new PrintWriter(source)) {
+			out.print(PROGRAM);
+		}
+		for(File output : new File[] {text, binary}) {
+			Map<Integer, String> errors = new TreeMap<>();
+			assertTrue(Assembler.assemble(source, output, errors));
+			MachineModel model = new MachineModel(true);
+			Code code = new Code();
+			assertTrue(Loader.load(model, code, output).isEmpty());
+			assertEquals(6, code.getProgramSize());
+			assertEquals(-2, code.getArg(2));
+			assertEquals(2, code.getIndirectionLevel(2));
+			assertEquals(-3, model.getData(2));
+		}
+		try(PrintWriter out = new PrintWriter(source)) {
+			out.print("LOD 1\nBAD\n");
+		}
+		text.delete();
+		Map<Integer, String> errors = new TreeMap<>();
+		assertFalse(Assembler.assemble(source, text, errors));
+		assertTrue(errors.containsKey(2));
+		assertFalse(text.exists());
+		errors.clear();
+		assertFalse(Assembler.assemble(new File(source.getPath() + ".missing"), text, errors));
+		assertTrue(errors.containsKey(0));
+	}
+}
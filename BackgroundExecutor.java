@@ -0,0 +1,131 @@
+package pippin;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Runs the loaded program on its own thread for the "Go" menu item, so the
+ * Event Dispatch Thread stays free while the program runs. The program is
+ * run in batches of BATCH instructions with MachineModel.run, holding the
+ * lock of the model for each batch, and the views are refreshed on the EDT
+ * at most FRAMES_PER_SECOND times a second. MachineView takes the same lock
+ * while it notifies its observers, so they always see the machine between
+ * two batches.
+ */
+public class BackgroundExecutor {
+	private static final long BATCH = 100_000;
+	private static final int FRAMES_PER_SECOND = 30;
+	private static final long FRAME_NANOS = 1_000_000_000L / FRAMES_PER_SECOND;
+	private final MachineModel model;
+	private final MachineView machineView;
+	private final AtomicBoolean framePending = new AtomicBoolean();
+	private Thread thread;
+	private volatile boolean active;
+	private volatile boolean paused;
+	private volatile boolean cancelled;
+
+	public BackgroundExecutor(MachineModel model, MachineView machineView) {
+		this.model = model;
+		this.machineView = machineView;
+	}
+
+	/**
+	 * @return true from start until the run has ended, also while paused
+	 */
+	public boolean isActive() {
+		return active;
+	}
+
+	public boolean isPaused() {
+		return paused;
+	}
+
+	/**
+	 * Starts running the program from its current state, unless a run is
+	 * already active.
+	 */
+	public void start() {
+		if(isActive()) {
+			return;
+		}
+		paused = false;
+		cancelled = false;
+		active = true;
+		thread = new Thread(this::runLoop, "Pippin executor");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public synchronized void setPaused(boolean paused) {
+		this.paused = paused;
+		notifyAll();
+	}
+
+	/**
+	 * Stops the run after the current batch and waits for the thread to
+	 * end. The machine is left as it was after that batch, so it can still
+	 * be stepped.
+	 */
+	public void cancel() {
+		Thread running = thread;
+		if(running == null) {
+			return;
+		}
+		synchronized(this) {
+			cancelled = true;
+			notifyAll();
+		}
+		try {
+			running.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void runLoop() {
+		long lastFrame = System.nanoTime();
+		RunResult result = null;
+		try {
+			while(!cancelled) {
+				synchronized(this) {
+					while(paused && !cancelled) {
+						wait();
+					}
+				}
+				if(cancelled) {
+					break;
+				}
+				synchronized(model) {
+					result = model.run(BATCH);
+				}
+				if(result.getReason() != RunResult.HaltReason.STEP_LIMIT) {
+					break;
+				}
+				long now = System.nanoTime();
+				if(now - lastFrame >= FRAME_NANOS) {
+					lastFrame = now;
+					publishFrame();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		RunResult last = cancelled ? null : result;
+		active = false;
+		SwingUtilities.invokeLater(() -> machineView.executionEnded(last));
+	}
+
+	/**
+	 * Asks the EDT to refresh the views unless the previous refresh has not
+	 * happened yet, so a slow EDT never has a queue of stale frames.
+	 */
+	private void publishFrame() {
+		if(framePending.compareAndSet(false, true)) {
+			SwingUtilities.invokeLater(() -> {
+				framePending.set(false);
+				machineView.showProgress();
+			});
+		}
+	}
+}
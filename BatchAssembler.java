@@ -0,0 +1,297 @@
+package pippin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Assembles whole trees of pasm sources without the GUI, in parallel on a
+ * ForkJoinPool. Every source is assembled next to itself to a pexe file, or
+ * a pbin file with -binary, and a source is skipped when its output is newer
+ * than it. With -hash a source is skipped instead when the SHA-256 of its
+ * contents matches the one saved next to the output when it was assembled,
+ * for trees copied or restored with their old timestamps. The errors of all
+ * the sources that failed are written as one report.
+ * Usage: BatchAssembler [-binary] [-force] [-hash] [-threads n] [-report file] dir-or-glob ...
+ * A glob such as "src/**.pasm" is matched against the paths under the
+ * directory part in front of its first wildcard.
+ */
+public class BatchAssembler {
+	public enum Status {ASSEMBLED, UP_TO_DATE, FAILED}
+
+	/**
+	 * The outcome for one source file
+	 */
+	public static class Result {
+		private final File source;
+		private final File output;
+		private final Status status;
+		private final Map<Integer, String> errors;
+
+		public Result(File source, File output, Status status, Map<Integer, String> errors) {
+			this.source = source;
+			this.output = output;
+			this.status = status;
+			this.errors = errors;
+		}
+		public File getSource() {
+			return source;
+		}
+		public File getOutput() {
+			return output;
+		}
+		public Status getStatus() {
+			return status;
+		}
+		/**
+		 * @return the errors map of Assembler.assemble, empty unless FAILED
+		 */
+		public Map<Integer, String> getErrors() {
+			return errors;
+		}
+	}
+
+	/**
+	 * Finds the sources named by a directory, a single file or a glob.
+	 * @param pattern a directory, whose pasm files are all taken, a file or a glob
+	 * @return the source files, sorted
+	 * @throws IOException if a directory cannot be read
+	 */
+	public static List<File> findSources(String pattern) throws IOException {
+		File file = new File(pattern);
+		if(file.isFile()) {
+			return List.of(file);
+		}
+		Path base;
+		PathMatcher matcher;
+		if(file.isDirectory()) {
+			base = file.toPath();
+			matcher = path -> path.toString().endsWith(".pasm");
+		} else {
+			int wildcard = 0;
+			while(wildcard < pattern.length() && "*?[{".indexOf(pattern.charAt(wildcard)) < 0) {
+				wildcard++;
+			}
+			int slash = Math.max(pattern.lastIndexOf('/', wildcard), pattern.lastIndexOf(File.separatorChar, wildcard));
+			base = Paths.get(slash < 0 ? "." : pattern.substring(0, slash + 1));
+			matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+			if(slash < 0) {
+				// match "*.pasm" against "x.pasm", not "./x.pasm"
+				PathMatcher glob = matcher;
+				matcher = path -> glob.matches(base.relativize(path));
+			}
+		}
+		if(!Files.isDirectory(base)) {
+			return List.of();
+		}
+		PathMatcher accept = matcher;
+		try(Stream<Path> paths = Files.walk(base)) {
+			return paths.filter(Files::isRegularFile).filter(accept::matches)
+					.sorted().map(Path::toFile).collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * @param source a pasm file
+	 * @param binary true for a pbin output, false for pexe
+	 * @return the output file next to the source
+	 */
+	public static File outputFor(File source, boolean binary) {
+		String name = source.getName();
+		int dot = name.lastIndexOf('.');
+		String stem = dot < 0 ? name : name.substring(0, dot);
+		return new File(source.getAbsoluteFile().getParentFile(),
+				stem + "." + (binary ? BinaryFormat.EXTENSION : "pexe"));
+	}
+
+	/**
+	 * @param output an output file
+	 * @return the file next to it holding the SHA-256 of the source it was
+	 * assembled from, written in -hash mode
+	 */
+	public static File hashFileFor(File output) {
+		return new File(output.getPath() + ".sha256");
+	}
+
+	/**
+	 * Assembles sources in parallel. A source named more than once, for
+	 * instance by overlapping patterns or through different paths, is
+	 * assembled once, since two jobs on the same file would write the same
+	 * temporary output.
+	 * @param sources the pasm files
+	 * @param binary true to write pbin files, false for pexe
+	 * @param force true to assemble sources whose output is up to date
+	 * @param hash true to compare the contents of the sources with the hash
+	 * saved at the last assembly instead of comparing timestamps
+	 * @param threads the parallelism of the pool
+	 * @return one result per distinct source, in the order they first appear
+	 * in sources
+	 */
+	public static List<Result> assembleAll(List<File> sources, boolean binary, boolean force,
+			boolean hash, int threads) {
+		Set<File> unique = new LinkedHashSet<>();
+		for(File source : sources) {
+			try {
+				unique.add(source.getCanonicalFile());
+			} catch (IOException e) {
+				unique.add(source.getAbsoluteFile());
+			}
+		}
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			List<Callable<Result>> tasks = new ArrayList<>();
+			for(File source : unique) {
+				tasks.add(() -> assembleOne(source, binary, force, hash));
+			}
+			List<Result> results = new ArrayList<>();
+			for(Future<Result> future : pool.invokeAll(tasks)) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while assembling", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Assembling failed", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static Result assembleOne(File source, boolean binary, boolean force, boolean hash) {
+		File output = outputFor(source, binary);
+		Map<Integer, String> errors = new TreeMap<>();
+		String digest = hash ? sha256(source) : null;
+		if(!force && output.exists()) {
+			boolean upToDate;
+			if(hash) {
+				upToDate = digest != null && digest.equals(readHash(hashFileFor(output)));
+			} else {
+				upToDate = output.lastModified() >= source.lastModified();
+			}
+			if(upToDate) {
+				return new Result(source, output, Status.UP_TO_DATE, errors);
+			}
+		}
+		boolean ok = Assembler.assemble(source, output, errors);
+		if(hash) {
+			File hashFile = hashFileFor(output);
+			try {
+				if(ok && digest != null) {
+					Files.writeString(hashFile.toPath(), digest);
+				} else {
+					Files.deleteIfExists(hashFile.toPath());
+				}
+			} catch (IOException e) {
+				// without its hash file the source is simply assembled again next time
+				hashFile.delete();
+			}
+		}
+		return new Result(source, output, ok ? Status.ASSEMBLED : Status.FAILED, errors);
+	}
+
+	/**
+	 * @return the SHA-256 of the contents of a file in hex, or null if it
+	 * cannot be read
+	 */
+	private static String sha256(File file) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file.toPath()));
+			StringBuilder hex = new StringBuilder();
+			for(byte b : hash) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (IOException e) {
+			return null;
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String readHash(File hashFile) {
+		try {
+			return Files.readString(hashFile.toPath()).trim();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the errors of every failed source, followed by a summary line.
+	 * @param results the results of assembleAll
+	 * @param out where the report goes
+	 */
+	public static void report(List<Result> results, PrintStream out) {
+		int[] counts = new int[Status.values().length];
+		for(Result result : results) {
+			counts[result.getStatus().ordinal()]++;
+			if(result.getStatus() == Status.FAILED) {
+				out.println(result.getSource().getPath() + ":");
+				for(String error : result.getErrors().values()) {
+					out.println("  " + error);
+				}
+			}
+		}
+		out.println(results.size() + " sources: " + counts[Status.ASSEMBLED.ordinal()] + " assembled, "
+				+ counts[Status.UP_TO_DATE.ordinal()] + " up to date, "
+				+ counts[Status.FAILED.ordinal()] + " failed");
+	}
+
+	public static void main(String[] args) throws IOException {
+		boolean binary = false;
+		boolean force = false;
+		boolean hash = false;
+		int threads = Runtime.getRuntime().availableProcessors();
+		File reportFile = null;
+		int first = 0;
+		while(first < args.length && args[first].startsWith("-")) {
+			switch(args[first]) {
+			case "-binary": binary = true; break;
+			case "-force": force = true; break;
+			case "-hash": hash = true; break;
+			case "-threads": threads = Integer.parseInt(args[++first]); break;
+			case "-report": reportFile = new File(args[++first]); break;
+			default: throw new IllegalArgumentException("Unknown option " + args[first]);
+			}
+			first++;
+		}
+		List<File> sources = new ArrayList<>();
+		for(int i = first; i < args.length; i++) {
+			sources.addAll(findSources(args[i]));
+		}
+		long begin = System.nanoTime();
+		List<Result> results = assembleAll(sources, binary, force, hash, threads);
+		long time = System.nanoTime() - begin;
+		if(reportFile != null) {
+			try(PrintStream out = new PrintStream(reportFile)) {
+				report(results, out);
+			}
+		}
+		report(results, System.out);
+		System.out.printf("%.1f ms on %d threads%n", time / 1e6, threads);
+		if(results.stream().anyMatch(result -> result.getStatus() == Status.FAILED)) {
+			System.exit(1);
+		}
+	}
+}
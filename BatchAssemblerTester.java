@@ -0,0 +1,164 @@
+package pippin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchAssemblerTester {
+
+	File dir;
+
+	@Before
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("batch").toFile();
+		dir.deleteOnExit();
+	}
+
+	/**
+	 * Writes a source into the temporary directory, to be deleted on exit
+	 * with the files the tests assemble from it.
+	 */
+	private File source(String path, String text) throws IOException {
+		File file = new File(dir, path);
+		if(file.getParentFile().mkdirs()) {
+			file.getParentFile().deleteOnExit();
+		}
+		file.deleteOnExit();
+		File output = BatchAssembler.outputFor(file, false);
+		output.deleteOnExit();
+		BatchAssembler.hashFileFor(output).deleteOnExit();
+		try(PrintWriter out = new PrintWriter(file)) {
+			out.print(text);
+		}
+		return file;
+	}
+
+	private static List<BatchAssembler.Result> assemble(File source, boolean force, boolean hash) {
+		return BatchAssembler.assembleAll(List.of(source), false, force, hash, 1);
+	}
+
+	private static BatchAssembler.Status status(File source, boolean force, boolean hash) {
+		return assemble(source, force, hash).get(0).getStatus();
+	}
+
+	private static List<String> names(List<File> files) {
+		List<String> names = new ArrayList<>();
+		for(File file : files) {
+			names.add(file.getName());
+		}
+		return names;
+	}
+
+	@Test
+	// Tests finding sources by directory, by file and by glob
+	public void testFindSources() throws IOException {
+		source("a.pasm", "HALT\n");
+		source("b.txt", "HALT\n");
+		source("sub/c.pasm", "HALT\n");
+		source("sub/deeper/d.pasm", "HALT\n");
+		String base = dir.getPath() + File.separator;
+		assertEquals(List.of("a.pasm", "c.pasm", "d.pasm"), names(BatchAssembler.findSources(dir.getPath())));
+		assertEquals(List.of("a.pasm"), names(BatchAssembler.findSources(base + "a.pasm")));
+		assertEquals(List.of("a.pasm"), names(BatchAssembler.findSources(base + "*.pasm")));
+		assertEquals(List.of("c.pasm", "d.pasm"), names(BatchAssembler.findSources(base + "sub/**.pasm")));
+		assertEquals(List.of("a.pasm", "b.txt"), names(BatchAssembler.findSources(base + "{a.pasm,b.txt}")));
+		assertTrue(BatchAssembler.findSources(base + "missing/*.pasm").isEmpty());
+	}
+
+	@Test
+	// Tests that a source is skipped while its output is newer than it
+	public void testUpToDate() throws IOException {
+		File source = source("a.pasm", "LOD 1\nHALT\n");
+		assertEquals(BatchAssembler.Status.ASSEMBLED, status(source, false, false));
+		File output = BatchAssembler.outputFor(source, false);
+		assertTrue(output.exists());
+		assertEquals(BatchAssembler.Status.UP_TO_DATE, status(source, false, false));
+		assertEquals(BatchAssembler.Status.ASSEMBLED, status(source, true, false));
+		assertTrue(source.setLastModified(output.lastModified() + 2000));
+		assertEquals(BatchAssembler.Status.ASSEMBLED, status(source, false, false));
+		assertFalse(BatchAssembler.hashFileFor(output).exists());
+	}
+
+	@Test
+	// Tests that with hashes a source is skipped while its contents are the
+	// same, whatever the timestamps say
+	public void testHash() throws IOException {
+		File source = source("a.pasm", "LOD 1\nHALT\n");
+		File output = BatchAssembler.outputFor(source, false);
+		assertEquals(BatchAssembler.Status.ASSEMBLED, status(source, false, true));
+		assertTrue(BatchAssembler.hashFileFor(output).exists());
+		assertEquals(BatchAssembler.Status.UP_TO_DATE, status(source, false, true));
+		// touched but not changed
+		assertTrue(source.setLastModified(output.lastModified() + 2000));
+		assertEquals(BatchAssembler.Status.UP_TO_DATE, status(source, false, true));
+		// changed but restored with an old timestamp
+		try(PrintWriter out = new PrintWriter(source)) {
+			out.print("LOD 2\nHALT\n");
+		}
+		assertTrue(source.setLastModified(output.lastModified() - 10_000));
+		assertEquals(BatchAssembler.Status.UP_TO_DATE, status(source, false, false));
+		assertEquals(BatchAssembler.Status.ASSEMBLED, status(source, false, true));
+		assertTrue(Files.readString(output.toPath()).startsWith("1 2 0"));
+		// a failed source loses its hash, so it is not taken as up to date
+		try(PrintWriter out = new PrintWriter(source)) {
+			out.print("FOO\n");
+		}
+		assertEquals(BatchAssembler.Status.FAILED, status(source, false, true));
+		assertFalse(BatchAssembler.hashFileFor(output).exists());
+	}
+
+	@Test
+	// Tests that a source named by overlapping patterns and different paths
+	// is assembled once
+	public void testOverlapping() throws IOException {
+		source("a.pasm", "HALT\n");
+		source("sub/b.pasm", "HALT\n");
+		List<File> sources = new ArrayList<>();
+		sources.addAll(BatchAssembler.findSources(dir.getPath()));
+		sources.addAll(BatchAssembler.findSources(dir.getPath() + File.separator + "*.pasm"));
+		sources.add(new File(dir, "sub" + File.separator + ".." + File.separator + "a.pasm"));
+		assertEquals(4, sources.size());
+		List<BatchAssembler.Result> results = BatchAssembler.assembleAll(sources, false, true, false, 4);
+		assertEquals(2, results.size());
+		assertEquals("a.pasm", results.get(0).getSource().getName());
+		assertEquals("b.pasm", results.get(1).getSource().getName());
+		for(BatchAssembler.Result result : results) {
+			assertEquals(BatchAssembler.Status.ASSEMBLED, result.getStatus());
+		}
+	}
+
+	@Test
+	// Tests that the report lists the errors of the failed sources and counts
+	// each status
+	public void testReport() throws IOException {
+		File good = source("good.pasm", "HALT\n");
+		File bad = source("bad.pasm", "LOD 1\nFOO 1\n");
+		File done = source("done.pasm", "HALT\n");
+		assemble(done, false, false);
+		List<BatchAssembler.Result> results = BatchAssembler.assembleAll(List.of(good, bad, done), false, false,
+				false, 2);
+		assertEquals(BatchAssembler.Status.FAILED, results.get(1).getStatus());
+		assertFalse(BatchAssembler.outputFor(bad, false).exists());
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(PrintStream out = new PrintStream(bytes)) {
+			BatchAssembler.report(results, out);
+		}
+		String[] lines = bytes.toString().split("\\R");
+		assertEquals(3, lines.length);
+		assertEquals(results.get(1).getSource().getPath() + ":", lines[0]);
+		assertTrue(lines[1].startsWith("  ") && lines[1].contains("illegal mnemonic"));
+		assertEquals("3 sources: 1 assembled, 1 up to date, 1 failed", lines[2]);
+	}
+}
@@ -0,0 +1,261 @@
+package pippin;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The binary executable format, pbin, an alternative to the text pexe.
+ * All numbers are big-endian:
+ * <pre>
+ * int   MAGIC ("PIPB")
+ * short VERSION
+ * short 0, reserved for flags
+ * int   the number of instructions n
+ * int   the number of data runs r
+ * long  n instruction words, packed as by Code.encode
+ * r times:
+ *   int start address, int length m, int m values
+ * </pre>
+ * A run holds the values of consecutive cells, so the data of a program is
+ * stored without an address per cell and cells that are not set take no
+ * space. Loading reads the instructions and each run with one bulk get
+ * from a ByteBuffer, which is memory-mapped for large files.
+ */
+public class BinaryFormat {
+	public static final int MAGIC = 0x50495042;
+	public static final int VERSION = 1;
+	public static final String EXTENSION = "pbin";
+	/**
+	 * Files at least this long are memory-mapped instead of read
+	 */
+	private static final long MAP_THRESHOLD = 1 << 20;
+
+	/**
+	 * @param file a file name
+	 * @return true if the file should be written in the binary format
+	 */
+	public static boolean isBinaryName(File file) {
+		return file.getName().toLowerCase().endsWith("." + EXTENSION);
+	}
+
+	/**
+	 * @param file an executable file
+	 * @return true if the file starts with MAGIC
+	 * @throws IOException if the file cannot be read
+	 */
+	public static boolean isBinary(File file) throws IOException {
+		try(InputStream in = new FileInputStream(file)) {
+			byte[] head = new byte[4];
+			return in.read(head) == 4 && ByteBuffer.wrap(head).getInt() == MAGIC;
+		}
+	}
+
+	/**
+	 * Writes a program in the binary format.
+	 * @param file the output file
+	 * @param code the program
+	 * @param addresses the addresses of the data cells
+	 * @param values the values of the data cells, values[i] goes to addresses[i];
+	 * when an address appears twice the later value is kept, as in a pexe file
+	 * @param count the number of data cells
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(File file, Code code, int[] addresses, int[] values, int count)
+			throws IOException {
+		// sort the cells by address, the later of two equal addresses last
+		long[] cells = new long[count];
+		for(int i = 0; i < count; i++) {
+			cells[i] = ((long)addresses[i] << 32) | i;
+		}
+		Arrays.sort(cells);
+		int[] sortedAddresses = new int[count];
+		int[] sortedValues = new int[count];
+		int cellCount = 0;
+		for(int i = 0; i < count; i++) {
+			int address = (int)(cells[i] >> 32);
+			int value = values[(int)cells[i]];
+			if(cellCount > 0 && sortedAddresses[cellCount - 1] == address) {
+				sortedValues[cellCount - 1] = value;
+			} else {
+				sortedAddresses[cellCount] = address;
+				sortedValues[cellCount++] = value;
+			}
+		}
+		try(Writer out = new Writer(file)) {
+			for(int i = 0; i < code.getProgramSize(); i++) {
+				long word = code.getWord(i);
+				out.instruction(Code.op(word), Code.arg(word), Code.level(word));
+			}
+			for(int i = 0; i < cellCount; i++) {
+				out.data(sortedAddresses[i], sortedValues[i]);
+			}
+		}
+	}
+
+	/**
+	 * Writes a binary executable as a stream, so the program never has to be
+	 * held in memory. Consecutive data cells are collected into runs of at
+	 * most RUN_MAX cells and the counts in the header are filled in by close.
+	 */
+	public static class Writer implements ProgramSink {
+		private static final int RUN_MAX = 4096;
+		private static final int COUNTS_OFFSET = 8;
+		private final File file;
+		private final DataOutputStream out;
+		private final int[] run = new int[RUN_MAX];
+		private int runStart;
+		private int runLength = 0;
+		private int instructions = 0;
+		private int runs = 0;
+		private boolean inData = false;
+
+		public Writer(File file) throws IOException {
+			this.file = file;
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeShort(0);
+			out.writeInt(0);
+			out.writeInt(0);
+		}
+
+		@Override
+		public void instruction(int op, int arg, int level) throws IOException {
+			if(inData) {
+				throw new IllegalStateException("Instructions must come before the data");
+			}
+			out.writeLong(Code.encode(op, arg, level));
+			instructions++;
+		}
+
+		@Override
+		public void data(int address, int value) throws IOException {
+			inData = true;
+			if(runLength > 0 && (address != runStart + runLength || runLength == RUN_MAX)) {
+				flushRun();
+			}
+			if(runLength == 0) {
+				runStart = address;
+			}
+			run[runLength++] = value;
+		}
+
+		private void flushRun() throws IOException {
+			out.writeInt(runStart);
+			out.writeInt(runLength);
+			for(int i = 0; i < runLength; i++) {
+				out.writeInt(run[i]);
+			}
+			runs++;
+			runLength = 0;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				if(runLength > 0) {
+					flushRun();
+				}
+			} finally {
+				out.close();
+			}
+			try(RandomAccessFile header = new RandomAccessFile(file, "rw")) {
+				header.seek(COUNTS_OFFSET);
+				header.writeInt(instructions);
+				header.writeInt(runs);
+			}
+		}
+	}
+
+	/**
+	 * Loads a binary executable. As with the text format the errors are
+	 * returned; a damaged file is reported with the key 0.
+	 * @param model the machine whose memory receives the data
+	 * @param code the code that receives the program
+	 * @param file the pbin file
+	 * @return the errors, empty if the file loaded
+	 * @throws IOException if the file cannot be read
+	 */
+	public static Map<Integer, String> load(MachineModel model, Code code, File file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			ByteBuffer buffer;
+			if(size >= MAP_THRESHOLD) {
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			} else {
+				buffer = ByteBuffer.allocate((int)size);
+				while(buffer.hasRemaining() && channel.read(buffer) >= 0) {
+					// keep reading until the whole file is in the buffer
+				}
+				buffer.flip();
+			}
+			return load(model, code, buffer);
+		}
+	}
+
+	/**
+	 * Loads a binary executable from a buffer positioned at its MAGIC.
+	 * @param model the machine whose memory receives the data
+	 * @param code the code that receives the program
+	 * @param buffer the bytes of the executable
+	 * @return the errors, empty if the executable loaded
+	 */
+	public static Map<Integer, String> load(MachineModel model, Code code, ByteBuffer buffer) {
+		Map<Integer, String> errors = new TreeMap<>();
+		try {
+			if(buffer.getInt() != MAGIC) {
+				errors.put(0, "Error: not a Pippin binary executable");
+				return errors;
+			}
+			int version = buffer.getShort();
+			buffer.getShort();
+			if(version != VERSION) {
+				errors.put(0, "Error: binary executable version " + version
+						+ " is not supported, expected " + VERSION);
+				return errors;
+			}
+			int length = buffer.getInt();
+			int runs = buffer.getInt();
+			if(length < 0 || runs < 0) {
+				errors.put(0, "Error: the binary executable is damaged");
+				return errors;
+			}
+			LongBuffer words = buffer.slice().asLongBuffer();
+			words.limit(length);
+			code.setWords(words);
+			buffer.position(buffer.position() + 8 * length);
+			Memory memory = model.getMemory();
+			for(int i = 0; i < runs; i++) {
+				int start = buffer.getInt();
+				int count = buffer.getInt();
+				if(count < 0 || count > buffer.remaining() / 4) {
+					throw new BufferUnderflowException();
+				}
+				IntBuffer values = buffer.slice().asIntBuffer();
+				values.limit(count);
+				memory.write(start, values);
+				buffer.position(buffer.position() + 4 * count);
+			}
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			errors.put(0, "Error: the binary executable is truncated");
+		} catch (ArrayIndexOutOfBoundsException e) {
+			errors.put(0, "Error: " + e.getMessage());
+		}
+		return errors;
+	}
+}
@@ -0,0 +1,313 @@
+package pippin;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Saves the state of a long headless run to a file every so many steps or
+ * seconds, so that it can be resumed after a crash. A checkpoint is a
+ * binary file, big-endian like BinaryFormat:
+ * <pre>
+ * int   MAGIC ("PIPC")
+ * short VERSION
+ * short 0, reserved for flags
+ * long  the fingerprint of the program (Code.fingerprint)
+ * long  the number of steps executed
+ * int   accumulator, int program counter
+ * int   the size of memory
+ * int   the number of runs r
+ * r times:
+ *   int start address, int length m, int m values
+ * </pre>
+ * with a run for each allocated page of memory, so cells that were never
+ * written take no space.
+ *
+ * Taking a checkpoint only freezes the memory as a Memory.Image, which
+ * shares the pages instead of copying them, and the file is written by a
+ * background thread. There is one checkpoint being written and at most one
+ * waiting; a newer one replaces the waiting one, so the interpreter never
+ * waits for the disk. Each file is written next to the checkpoint and moved
+ * over it when complete, so the file always holds a whole checkpoint.
+ */
+public class Checkpointer implements Closeable {
+	public static final int MAGIC = 0x50495043;
+	public static final int VERSION = 1;
+	/**
+	 * The steps run between two looks at the clock when checkpoints are
+	 * only taken by time
+	 */
+	private static final long SLICE = 1 << 20;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private final File file;
+	private final long everySteps;
+	private final long everyNanos;
+	private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "Pippin checkpointer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final AtomicReference<Checkpoint> waiting = new AtomicReference<>();
+	private volatile IOException failure;
+	private volatile int written = 0;
+
+	/**
+	 * The state saved by a checkpoint, frozen when it was taken
+	 */
+	private static final class Checkpoint {
+		final long fingerprint;
+		final long steps;
+		final int accumulator;
+		final int programCounter;
+		final Memory.Image memory;
+
+		Checkpoint(MachineModel model, long fingerprint, long steps) {
+			this.fingerprint = fingerprint;
+			this.steps = steps;
+			accumulator = model.getAccumulator();
+			programCounter = model.getProgramCounter();
+			memory = model.getMemory().image();
+		}
+	}
+
+	/**
+	 * @param file the checkpoint file
+	 * @param everySteps take a checkpoint after this many steps, 0 for never
+	 * @param everySeconds take a checkpoint after this many seconds, 0 for never
+	 */
+	public Checkpointer(File file, long everySteps, double everySeconds) {
+		if(everySteps < 0 || everySeconds < 0) {
+			throw new IllegalArgumentException("Checkpoint intervals cannot be negative");
+		}
+		this.file = file;
+		this.everySteps = everySteps;
+		this.everyNanos = (long)(everySeconds * 1e9);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the number of checkpoints written to the file so far
+	 */
+	public int getWrittenCount() {
+		return written;
+	}
+
+	/**
+	 * Runs the program of the model like MachineModel.run, taking
+	 * checkpoints as it goes. When the step limit is reached a last
+	 * checkpoint is taken, so the run can be continued with a higher limit.
+	 * @param model the machine, with its program installed
+	 * @param stepsDone the steps already executed, as returned by resume, or 0
+	 * @param maxSteps the step limit of the whole run, counting stepsDone
+	 * @return how the run ended, with the steps counted from the start of the
+	 * program
+	 */
+	public RunResult run(MachineModel model, long stepsDone, long maxSteps) {
+		long fingerprint = model.getCode().fingerprint();
+		long steps = stepsDone;
+		long nextSteps = everySteps > 0 ? steps + everySteps : Long.MAX_VALUE;
+		long nextTime = System.nanoTime() + everyNanos;
+		RunResult result;
+		while(true) {
+			long chunk = Math.min(maxSteps - steps, nextSteps - steps);
+			if(everyNanos > 0) {
+				chunk = Math.min(chunk, SLICE);
+			}
+			result = model.run(chunk);
+			steps += result.getSteps();
+			if(result.getReason() != RunResult.HaltReason.STEP_LIMIT || steps >= maxSteps) {
+				break;
+			}
+			long now = everyNanos > 0 ? System.nanoTime() : 0;
+			if(steps >= nextSteps || (everyNanos > 0 && now - nextTime >= 0)) {
+				checkpoint(model, fingerprint, steps);
+				nextSteps = everySteps > 0 ? steps + everySteps : Long.MAX_VALUE;
+				nextTime = now + everyNanos;
+			}
+		}
+		if(result.getReason() == RunResult.HaltReason.STEP_LIMIT) {
+			checkpoint(model, fingerprint, steps);
+		}
+		return new RunResult(result.getReason(), steps, result.getAccumulator(),
+				result.getProgramCounter(), result.getError());
+	}
+
+	/**
+	 * Takes a checkpoint and hands it to the writer thread.
+	 * @param model the machine
+	 * @param steps the steps executed since the program started
+	 */
+	public void checkpoint(MachineModel model, long steps) {
+		checkpoint(model, model.getCode().fingerprint(), steps);
+	}
+
+	private void checkpoint(MachineModel model, long fingerprint, long steps) {
+		if(waiting.getAndSet(new Checkpoint(model, fingerprint, steps)) == null) {
+			writer.execute(() -> {
+				Checkpoint checkpoint = waiting.getAndSet(null);
+				try {
+					write(checkpoint);
+					written++;
+				} catch (IOException e) {
+					failure = e;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Waits until the checkpoints taken so far are on disk.
+	 * @throws IOException if writing one of them failed
+	 */
+	public void flush() throws IOException {
+		try {
+			writer.submit(() -> {}).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing the checkpoint", e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+		IOException e = failure;
+		if(e != null) {
+			failure = null;
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes the waiting checkpoints and stops the writer thread.
+	 * @throws IOException if writing a checkpoint failed
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			writer.shutdown();
+		}
+	}
+
+	private void write(Checkpoint checkpoint) throws IOException {
+		File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+		Memory.Image memory = checkpoint.memory;
+		int runs = 0;
+		for(int p = 0; p < memory.pageCount(); p++) {
+			if(memory.page(p) != null) {
+				runs++;
+			}
+		}
+		try(FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			buffer.putInt(MAGIC).putShort((short)VERSION).putShort((short)0);
+			buffer.putLong(checkpoint.fingerprint).putLong(checkpoint.steps);
+			buffer.putInt(checkpoint.accumulator).putInt(checkpoint.programCounter);
+			buffer.putInt(memory.size()).putInt(runs);
+			for(int p = 0; p < memory.pageCount(); p++) {
+				int[] page = memory.page(p);
+				if(page == null) {
+					continue;
+				}
+				if(buffer.remaining() < 8) {
+					drain(channel, buffer);
+				}
+				buffer.putInt(Memory.Image.pageStart(p)).putInt(page.length);
+				for(int done = 0; done < page.length; ) {
+					if(buffer.remaining() < 4) {
+						drain(channel, buffer);
+					}
+					int n = Math.min(page.length - done, buffer.remaining() / 4);
+					buffer.asIntBuffer().put(page, done, n);
+					buffer.position(buffer.position() + 4 * n);
+					done += n;
+				}
+			}
+			drain(channel, buffer);
+			channel.force(false);
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Puts a machine back to the state saved in a checkpoint. The program
+	 * must already be installed, and be the one the checkpoint was taken
+	 * from; the data memory, accumulator and program counter are replaced.
+	 * @param model the machine
+	 * @param file the checkpoint file
+	 * @return the number of steps executed when the checkpoint was taken
+	 * @throws IOException if the file cannot be read, is damaged, or
+	 * belongs to another program or memory size
+	 */
+	public static long resume(MachineModel model, File file) throws IOException {
+		// read rather than mapped, so the file can be replaced by the next checkpoint
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		try {
+			if(buffer.getInt() != MAGIC) {
+				throw new IOException(file.getName() + " is not a Pippin checkpoint");
+			}
+			int version = buffer.getShort();
+			buffer.getShort();
+			if(version != VERSION) {
+				throw new IOException("Checkpoint version " + version + " is not supported, expected " + VERSION);
+			}
+			long fingerprint = buffer.getLong();
+			if(model.getCode() == null || fingerprint != model.getCode().fingerprint()) {
+				throw new IOException("The checkpoint " + file.getName() + " was taken from another program");
+			}
+			long steps = buffer.getLong();
+			int accumulator = buffer.getInt();
+			int programCounter = buffer.getInt();
+			int size = buffer.getInt();
+			if(size != model.getMemorySize()) {
+				throw new IOException("The checkpoint has " + size + " memory cells, the machine has "
+						+ model.getMemorySize());
+			}
+			int runs = buffer.getInt();
+			model.clearMemory();
+			Memory memory = model.getMemory();
+			for(int i = 0; i < runs; i++) {
+				int start = buffer.getInt();
+				int count = buffer.getInt();
+				if(count < 0 || count > buffer.remaining() / 4) {
+					throw new BufferUnderflowException();
+				}
+				IntBuffer values = buffer.slice().asIntBuffer();
+				values.limit(count);
+				memory.write(start, values);
+				buffer.position(buffer.position() + 4 * count);
+			}
+			model.setAccumulator(accumulator);
+			model.setProgramCounter(programCounter);
+			model.setRunning(true);
+			return steps;
+		} catch (BufferUnderflowException e) {
+			throw new IOException("The checkpoint " + file.getName() + " is truncated");
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("The checkpoint " + file.getName() + " is damaged: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package pippin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CheckpointerTester {
+
+	File file;
+
+	@Before
+	public void setup() throws IOException {
+		file = File.createTempFile("checkpoint", ".ckpt");
+		file.deleteOnExit();
+		file.delete();
+	}
+
+	// counts the cell at 0 down to zero, adding each value to the cell at 2000
+	private static MachineModel machine(int count) {
+		MachineModel model = new MachineModel(false, 4096, Code.CODE_MAX);
+		Code code = new Code();
+		code.setCode(0x1, 0x7D0, 1); // 0: LOD [7D0
+		code.setCode(0x3, 0, 1);     // 1: ADD [0
+		code.setCode(0x2, 0x7D0, 1); // 2: STO [7D0
+		code.setCode(0x1, 0, 1);     // 3: LOD [0
+		code.setCode(0x4, 1, 0);     // 4: SUB 1
+		code.setCode(0x2, 0, 1);     // 5: STO [0
+		code.setCode(0xC, 8, 0);     // 6: JMPZ 8
+		code.setCode(0xB, 0, 0);     // 7: JUMP 0
+		code.setCode(0xF, 0, 0);     // 8: HALT
+		model.setCode(code);
+		model.setData(0, count);
+		return model;
+	}
+
+	@Test
+	// Tests that a run stopped at its step limit and resumed on another
+	// machine ends the same as a run that was never stopped
+	public void testResume() throws IOException {
+		RunResult whole = machine(10_000).run(1_000_000);
+		MachineModel first = machine(10_000);
+		try(Checkpointer checkpointer = new Checkpointer(file, 5_000, 0)) {
+			RunResult part = checkpointer.run(first, 0, 32_123);
+			assertEquals(RunResult.HaltReason.STEP_LIMIT, part.getReason());
+			assertEquals(32_123, part.getSteps());
+		}
+		assertTrue(file.exists());
+		MachineModel second = machine(0);
+		long stepsDone = Checkpointer.resume(second, file);
+		assertEquals(32_123, stepsDone);
+		assertEquals(first.getProgramCounter(), second.getProgramCounter());
+		RunResult rest;
+		try(Checkpointer checkpointer = new Checkpointer(file, 5_000, 0)) {
+			rest = checkpointer.run(second, stepsDone, 1_000_000);
+			checkpointer.flush();
+			assertTrue(checkpointer.getWrittenCount() > 0);
+		}
+		assertEquals(RunResult.HaltReason.HALTED, rest.getReason());
+		assertEquals(whole.getSteps(), rest.getSteps());
+		assertEquals(50_005_000, second.getData(2000));
+	}
+
+	@Test (expected=IOException.class)
+	// Tests that a checkpoint is not resumed into a different program
+	public void testOtherProgram() throws IOException {
+		try(Checkpointer checkpointer = new Checkpointer(file, 0, 0)) {
+			checkpointer.run(machine(100), 0, 50);
+		}
+		MachineModel other = machine(100);
+		other.getCode().setCode(0xF, 0, 0);
+		other.setCode(other.getCode());
+		Checkpointer.resume(other, file);
+	}
+
+	@Test (expected=IOException.class)
+	// Tests that a cut off file is reported
+	public void testTruncated() throws IOException {
+		try(Checkpointer checkpointer = new Checkpointer(file, 0, 0)) {
+			checkpointer.run(machine(100), 0, 50);
+		}
+		try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 10);
+		}
+		Checkpointer.resume(machine(100), file);
+	}
+}
@@ -1,46 +1,151 @@
 package pippin;
-import java.util.ArrayList;
+import java.nio.LongBuffer;
+import java.util.Arrays;
 
 public class Code {
-	class IntTriple {
-		private int op;
-		private int arg;
-		private int indirectionLevel;
-		public IntTriple(int op, int arg, int indirectionLevel) {
-			this.op = op;
-			this.arg = arg;
-			this.indirectionLevel = indirectionLevel;
-		}
+	/**
+	 * Each instruction is packed into a single long so that fetching an
+	 * instruction is one array read. The low 32 bits hold the argument,
+	 * the next 16 bits the indirection level and the top 16 bits the opcode.
+	 * Opcodes and levels that do not fit in 16 bits are stored as
+	 * OUT_OF_RANGE, which is never legal, so they still fail when executed.
+	 */
+	private static final int OUT_OF_RANGE = Short.MAX_VALUE;
+	/**
+	 * The default capacity, used by the no-argument constructor
+	 */
+	public static final int CODE_MAX = 256;
+	private final int capacity;
+	private long[] program;
+	private int size = 0;
+	public Code() {
+		this(CODE_MAX);
+	}
+	/**
+	 * @param capacity the largest number of instructions this program can hold
+	 */
+	public Code(int capacity) {
+		this.capacity = capacity;
+		program = new long[Math.min(capacity, CODE_MAX)];
+	}
+	public int getCapacity() {
+		return capacity;
 	}
-	public static int CODE_MAX = 256;
-	private ArrayList<IntTriple> program = new ArrayList<IntTriple>();
 	public int getProgramSize() {
-		return program.size();
+		return size;
+	}
+	/**
+	 * Packs an instruction into the single word format used by Code.
+	 * @param op the opcode
+	 * @param arg the argument
+	 * @param level the indirection level
+	 * @return the packed instruction
+	 */
+	public static long encode(int op, int arg, int level) {
+		return ((long)fit(op) << 48) | (((long)fit(level) & 0xFFFF) << 32) | (arg & 0xFFFFFFFFL);
+	}
+	private static int fit(int value) {
+		return value == (short)value ? value : OUT_OF_RANGE;
+	}
+	public static int op(long word) {
+		return (int)(word >> 48);
+	}
+	public static int arg(long word) {
+		return (int)word;
+	}
+	public static int level(long word) {
+		return (short)(word >> 32);
+	}
+	/**
+	 * Returns the packed instruction at position i of the program.
+	 * @param i the position of the instruction
+	 * @return the packed instruction, to be taken apart with op, arg and level
+	 * @throws IndexOutOfBoundsException if i is not in the program
+	 */
+	long getWord(int i) {
+		if(i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+		}
+		return program[i];
 	}
 	int getOp(int i) {
-		return program.get(i).op;
+		return op(getWord(i));
 	}
 	int getArg(int i) {
-		return program.get(i).arg;
+		return arg(getWord(i));
 	}
 	int getIndirectionLevel(int i) {
-		return program.get(i).indirectionLevel;
+		return level(getWord(i));
 	}
 	void clear() {
-		program.clear();
+		size = 0;
 	}
+	/**
+	 * Adds an instruction to the end of the program.
+	 * @param op the opcode
+	 * @param arg the argument
+	 * @param level the indirection level
+	 * @throws ArrayIndexOutOfBoundsException if the program is already at its capacity
+	 */
 	public void setCode(int op, int arg, int level) {
-		program.add(new IntTriple(op,arg,level));
+		if(size == capacity) {
+			throw new ArrayIndexOutOfBoundsException(
+					"The program is longer than the code memory of " + capacity);
+		}
+		if(size == program.length) {
+			program = Arrays.copyOf(program, (int)Math.min(2L * program.length, capacity));
+		}
+		program[size++] = encode(op, arg, level);
+	}
+	/**
+	 * Adds packed instructions to the end of the program with one bulk get.
+	 * @param words the instructions, packed as by encode, read up to their limit
+	 * @throws ArrayIndexOutOfBoundsException if they do not fit in the capacity
+	 */
+	void setWords(LongBuffer words) {
+		int n = words.remaining();
+		if(n > capacity - size) {
+			throw new ArrayIndexOutOfBoundsException(
+					"The program is longer than the code memory of " + capacity);
+		}
+		if(size + n > program.length) {
+			program = Arrays.copyOf(program, size + n);
+		}
+		words.get(program, size, n);
+		size += n;
+	}
+	/**
+	 * @return a 64 bit hash of the instructions, to tell whether a file
+	 * saved from a run belongs to this program
+	 */
+	long fingerprint() {
+		long hash = 0xcbf29ce484222325L ^ size;
+		for(int i = 0; i < size; i++) {
+			hash = (hash ^ program[i]) * 0x100000001b3L;
+			hash ^= hash >>> 29;
+		}
+		return hash;
+	}
+	/**
+	 * @param capacity the smallest capacity of the copy
+	 * @return a copy of the program with at least this capacity, more if
+	 * the program is longer
+	 */
+	Code copy(int capacity) {
+		Code copy = new Code(Math.max(capacity, size));
+		copy.setWords(LongBuffer.wrap(program, 0, size));
+		return copy;
 	}
 	public String getCodeText(int i) {
 		StringBuilder builder = new StringBuilder();
-		if(i < program.size()) {
-			builder.append(InstructionMap.mnemonics.get(program.get(i).op));
+		if(i < size) {
+			long word = program[i];
+			builder.append(InstructionMap.mnemonics.get(op(word)));
 			builder.append(' ');
-			for(int j = 0; j < program.get(i).indirectionLevel; j++) {
+			for(int j = 0; j < level(word); j++) {
 				builder.append('[');
 			}
-			builder.append(program.get(i).arg);
+			builder.append(arg(word));
 		}
 		return builder.toString();
 	}
@@ -0,0 +1,67 @@
+package pippin;
+
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * The code memory as a table of line number and instruction text. Like
+ * MemoryTableModel the text is read from the program when a row is painted.
+ */
+public class CodeTableModel extends AbstractTableModel {
+	private static final long serialVersionUID = 1L;
+	private static final String[] COLUMNS = {"Line", "Instruction"};
+	private int size;
+	private Code code;
+	private int highlighted = -1;
+
+	public CodeTableModel(int size) {
+		this.size = size;
+	}
+	@Override
+	public int getRowCount() {
+		return size;
+	}
+	@Override
+	public int getColumnCount() {
+		return COLUMNS.length;
+	}
+	@Override
+	public String getColumnName(int column) {
+		return COLUMNS[column];
+	}
+	@Override
+	public Object getValueAt(int row, int column) {
+		if(column == 0) {
+			return row + ":";
+		}
+		return code == null ? "" : code.getCodeText(row);
+	}
+	/**
+	 * @param code the program to show, or null to show nothing
+	 */
+	public void setCode(Code code) {
+		this.code = code;
+		fireTableRowsUpdated(0, size - 1);
+	}
+	public int getHighlighted() {
+		return highlighted;
+	}
+	/**
+	 * Moves the highlight to another line.
+	 * @param row the line to highlight or -1 for none
+	 */
+	public void setHighlighted(int row) {
+		if(row < 0 || row >= size) {
+			row = -1;
+		}
+		if(row != highlighted) {
+			int old = highlighted;
+			highlighted = row;
+			if(old >= 0) {
+				fireTableRowsUpdated(old, old);
+			}
+			if(row >= 0) {
+				fireTableRowsUpdated(row, row);
+			}
+		}
+	}
+}
@@ -1,22 +1,28 @@
 package pippin;
 import java.awt.Color;
 import java.awt.GridLayout;
-import java.util.Observable;
-import java.util.Observer;
+import java.util.Hashtable;
 
 import javax.swing.JButton;
 import javax.swing.JComponent;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JSlider;
 
-public class ControlPanel implements Observer {
+public class ControlPanel implements MachineListener {
 	private MachineView machineView;
 	private JButton stepButton = new JButton("Step");
+	private JButton backButton = new JButton("Back");
 	private JButton clearButton = new JButton("Clear");
 	private JButton runButton = new JButton("Run/Pause");;
 	private JButton reloadButton = new JButton("Reload");;
+	private JButton stopButton = new JButton("Stop");
+	// the slider positions are 1, 10, ... 100000 steps per tick and then unthrottled
+	private static final String[] SPEEDS = {"1", "10", "100", "1k", "10k", "100k", "max"};
+	private JSlider speedSlider = new JSlider(0, SPEEDS.length - 1, 0);
 	public ControlPanel(MachineView machineView) {
 		this.machineView = machineView;
-		machineView.addObserver(this);
+		machineView.addListener(this);
 		
 	}
 
@@ -26,6 +32,9 @@ public class ControlPanel implements Observer {
 		stepButton.setBackground(Color.WHITE);
 		stepButton.addActionListener(e -> machineView.step());
 		returnPanel.add(stepButton);
+		backButton.setBackground(Color.WHITE);
+		backButton.addActionListener(e -> machineView.stepBack(1));
+		returnPanel.add(backButton);
 		clearButton.setBackground(Color.WHITE);
 		clearButton.addActionListener(e -> machineView.clearAll());
 		returnPanel.add(clearButton);
@@ -35,16 +44,49 @@ public class ControlPanel implements Observer {
 		reloadButton.setBackground(Color.WHITE);
 		reloadButton.addActionListener(e -> machineView.reload());
 		returnPanel.add(reloadButton);
+		stopButton.setBackground(Color.WHITE);
+		stopButton.addActionListener(e -> machineView.cancelExecution());
+		returnPanel.add(stopButton);
+		Hashtable<Integer, JLabel> labels = new Hashtable<>();
+		for(int i = 0; i < SPEEDS.length; i++) {
+			labels.put(i, new JLabel(SPEEDS[i]));
+		}
+		speedSlider.setLabelTable(labels);
+		speedSlider.setPaintLabels(true);
+		speedSlider.setSnapToTicks(true);
+		speedSlider.setToolTipText("Steps per tick");
+		speedSlider.addChangeListener(e -> {
+			if(!speedSlider.getValueIsAdjusting()) {
+				machineView.setStepsPerTick(stepsAt(speedSlider.getValue()));
+			}
+		});
+		returnPanel.add(speedSlider);
 		return returnPanel;
 	}
 
+	private static int stepsAt(int position) {
+		if(position == SPEEDS.length - 1) {
+			return MachineView.UNTHROTTLED;
+		}
+		int steps = 1;
+		for(int i = 0; i < position; i++) {
+			steps *= 10;
+		}
+		return steps;
+	}
+
 	@Override
-	public void update(Observable arg0, Object arg1) {
+	public void machineChanged(MachineEvent event) {
+		if(event.has(MachineEvent.Kind.REGISTERS) || event.has(MachineEvent.Kind.STATE)) {
+			backButton.setEnabled(machineView.canStepBack());
+		}
+		if(!event.has(MachineEvent.Kind.STATE)) {
+			return;
+		}
 		runButton.setEnabled(machineView.getState().getRunPauseActive());
 		stepButton.setEnabled(machineView.getState().getStepActive());
 		clearButton.setEnabled(machineView.getState().getClearActive());
 		reloadButton.setEnabled(machineView.getState().getReloadActive());
-		reloadButton.addActionListener(e -> machineView.reload());
-		runButton.addActionListener(e -> machineView.toggleAutoStep());
+		stopButton.setEnabled(machineView.isExecuting());
 	}
 }
@@ -0,0 +1,75 @@
+package pippin;
+
+import java.util.Map;
+
+/**
+ * Compares the two ways of dispatching an instruction: a lookup through the
+ * INSTRUCTION_MAP view and the switch in InstructionSet used by step().
+ * The program is a count down loop so the dispatch cost dominates. It also
+ * times creating machines, which no longer builds any instructions.
+ * Run with an optional argument giving the loop count.
+ */
+public class DispatchBenchmark {
+	private static final int ROUNDS = 5;
+
+	private static Code countDownLoop() {
+		Code code = new Code();
+		code.setCode(0x1, 0, 1); // LOD [0
+		code.setCode(0x4, 1, 0); // SUB 1
+		code.setCode(0x2, 0, 1); // STO [0
+		code.setCode(0xC, 5, 0); // JMPZ 5
+		code.setCode(0xB, 0, 0); // JUMP 0
+		code.setCode(0xF, 0, 0); // HALT
+		return code;
+	}
+
+	private static MachineModel prepare(Code code, int loops) {
+		MachineModel model = new MachineModel(true);
+		model.setCode(code);
+		model.setData(0, loops);
+		model.setRunning(true);
+		return model;
+	}
+
+	private static long mapDispatch(Code code, int loops) {
+		MachineModel model = prepare(code, loops);
+		Map<Integer, Instruction> map = model.INSTRUCTION_MAP;
+		long start = System.nanoTime();
+		while(model.isRunning()) {
+			long word = code.getWord(model.getProgramCounter());
+			map.get(Code.op(word)).execute(Code.arg(word), Code.level(word));
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long arrayDispatch(Code code, int loops) {
+		MachineModel model = prepare(code, loops);
+		long start = System.nanoTime();
+		while(model.isRunning()) {
+			model.step();
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long construction(int machines) {
+		long start = System.nanoTime();
+		int sink = 0;
+		for(int i = 0; i < machines; i++) {
+			sink += new MachineModel().getProgramCounter();
+		}
+		return System.nanoTime() - start + sink;
+	}
+
+	public static void main(String[] args) {
+		int loops = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+		long steps = 5L * loops;
+		Code code = countDownLoop();
+		for(int round = 1; round <= ROUNDS; round++) {
+			long map = mapDispatch(code, loops);
+			long array = arrayDispatch(code, loops);
+			long create = construction(100_000);
+			System.out.printf("round %d: map %.2f ns/step, step %.2f ns/step, new machine %.0f ns%n",
+					round, (double)map / steps, (double)array / steps, create / 100_000.0);
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package pippin;
+
+/**
+ * The instructions of the machine, shared by every MachineModel. The
+ * instructions are static and stateless and take the machine they work on
+ * as a parameter, so creating a machine builds nothing and every machine
+ * runs the same code, which the JVM can optimise once for all of them.
+ *
+ * execute checks the indirection level on every instruction, as the
+ * instructions of the original INSTRUCTION_MAP did, and is used for programs
+ * the Verifier rejected. executeVerified leaves the checks out for programs
+ * that passed the Verifier; an unknown opcode is still detected.
+ */
+public final class InstructionSet {
+	static final int NOP = 0x0;
+	static final int LOD = 0x1;
+	static final int STO = 0x2;
+	static final int ADD = 0x3;
+	static final int SUB = 0x4;
+	static final int MUL = 0x5;
+	static final int DIV = 0x6;
+	static final int AND = 0x7;
+	static final int NOT = 0x8;
+	static final int CMPZ = 0x9;
+	static final int CMPL = 0xA;
+	static final int JUMP = 0xB;
+	static final int JMPZ = 0xC;
+	static final int HALT = 0xF;
+	static final int ROT = 0x14;
+	/**
+	 * The opcodes of all the instructions, in order
+	 */
+	static final int[] OPCODES = {NOP, LOD, STO, ADD, SUB, MUL, DIV, AND, NOT, CMPZ, CMPL, JUMP, JMPZ, HALT, ROT};
+	/**
+	 * One more than the largest opcode, the size of a table indexed by opcode
+	 */
+	static final int OPCODE_LIMIT = ROT + 1;
+	private static final boolean[] DEFINED = new boolean[OPCODE_LIMIT];
+	static {
+		for(int opcode : OPCODES) {
+			DEFINED[opcode] = true;
+		}
+	}
+
+	private InstructionSet() {
+	}
+
+	/**
+	 * @param opcode an opcode
+	 * @return true if there is an instruction with this opcode
+	 */
+	public static boolean isDefined(int opcode) {
+		return opcode >= 0 && opcode < OPCODE_LIMIT && DEFINED[opcode];
+	}
+
+	/**
+	 * Executes one instruction, checking its indirection level.
+	 * @param m the machine
+	 * @param opCode the opcode of the instruction
+	 * @param arg the argument of the instruction
+	 * @param level the indirection level of the instruction
+	 * @throws IllegalArgumentException for an unknown opcode or a level the
+	 * instruction does not allow
+	 */
+	public static void execute(MachineModel m, int opCode, int arg, int level) {
+		switch(opCode) {
+		case NOP:
+			if(level != 0){throw new IllegalArgumentException("NOP cannot be above 0");}
+			break;
+		case LOD:
+			if(level<0 || level>2) {throw new IllegalArgumentException("LOD level must be 0-2");}
+			break;
+		case STO:
+			if(level < 1 || level > 2){	throw new IllegalArgumentException("STO level must be 1 or 2");}
+			break;
+		case ADD:
+			if(level<0 || level>2) {throw new IllegalArgumentException("ADD level must be 0-2");}
+			break;
+		case SUB:
+			if(level<0 || level>2) {throw new IllegalArgumentException("SUB level must be 0-2");}
+			break;
+		case MUL:
+			if(level<0 || level>2) {throw new IllegalArgumentException("MUL level must be 0-2");}
+			break;
+		case DIV:
+			if(level <0 || level > 2) {
+				throw new IllegalArgumentException(
+					"Illegal indirection level in DIV instruction");
+			}
+			break;
+		case AND:
+			if(level < 0 || level > 1){throw new IllegalArgumentException("AND level must be 0-1");}
+			break;
+		case NOT:
+			if(level != 0){throw new IllegalArgumentException("NOT level must be 0");}
+			break;
+		case CMPZ:
+			if(level != 1){throw new IllegalArgumentException("CMPZ level must be 1");}
+			break;
+		case CMPL:
+			if(level != 1){throw new IllegalArgumentException("CMPL level must be 1");}
+			break;
+		case JUMP:
+			if(level<0 || level>1){throw new IllegalArgumentException("JUMP level must be 0-1");}
+			break;
+		case JMPZ:
+			if(level<0 || level >1){throw new IllegalArgumentException("JMPZ level must be 0-1");}
+			break;
+		case HALT:
+			break;
+		case ROT:
+			if(level != 1){throw new IllegalArgumentException("ROT level must be 1");}
+			break;
+		default:
+			throw new IllegalArgumentException("Illegal opcode " + opCode);
+		}
+		executeVerified(m, opCode, arg, level);
+	}
+
+	/**
+	 * Executes one instruction of a program that passed the Verifier, so the
+	 * level checks are left out. Operand errors such as an address outside
+	 * memory or a division by zero are still detected.
+	 * @param m the machine
+	 * @param opCode the opcode of the instruction
+	 * @param arg the argument of the instruction
+	 * @param level the indirection level of the instruction
+	 */
+	public static void executeVerified(MachineModel m, int opCode, int arg, int level) {
+		switch(opCode) {
+		case NOP:
+			m.setProgramCounter(m.getProgramCounter() + 1);
+			break;
+		case LOD:
+			m.setAccumulator(m.operand(arg, level));
+			m.setProgramCounter(m.getProgramCounter() + 1);
+			break;
+		case STO:
+			m.getMemory().setData(m.address(arg, level), m.getAccumulator());
+			m.setProgramCounter(m.getProgramCounter() + 1);
+			break;
+		case ADD:
+			m.setAccumulator(m.getAccumulator() + m.operand(arg, level));
+			m.setProgramCounter(m.getProgramCounter() + 1);
+			break;
+		case SUB:
+			m.setAccumulator(m.getAccumulator() - m.operand(arg, level));
+			m.setProgramCounter(m.getProgramCounter() + 1);
+			break;
+		case MUL:
+			m.setAccumulator(m.getAccumulator() * m.operand(arg, level));
+			m.setProgramCounter(m.getProgramCounter() + 1);
+			break;
+		case DIV:
+			int divisor = m.operand(arg, level);
+			if(divisor == 0){
+				throw new DivideByZeroException("Division by Zero");
+			}
+			m.setAccumulator(m.getAccumulator() / divisor);
+			m.setProgramCounter(m.getProgramCounter() + 1);
+			break;
+		case AND:
+			m.setAccumulator((m.operand(arg, level) != 0 && m.getAccumulator() != 0) ? 1 : 0);
+			m.setProgramCounter(m.getProgramCounter() + 1);
+			break;
+		case NOT:
+			m.setAccumulator(m.getAccumulator() == 0 ? 1 : 0);
+			m.setProgramCounter(m.getProgramCounter() + 1);
+			break;
+		case CMPZ:
+			m.setAccumulator(m.getMemory().getData(arg) == 0 ? 1 : 0);
+			m.setProgramCounter(m.getProgramCounter() + 1);
+			break;
+		case CMPL:
+			m.setAccumulator(m.getMemory().getData(arg) < 0 ? 1 : 0);
+			m.setProgramCounter(m.getProgramCounter() + 1);
+			break;
+		case JUMP:
+			m.setProgramCounter(m.operand(arg, level));
+			break;
+		case JMPZ:
+			int target = m.operand(arg, level);
+			if(m.getAccumulator() == 0){
+				m.setProgramCounter(target);
+			}
+			else{m.setProgramCounter(m.getProgramCounter() + 1);}
+			break;
+		case HALT:
+			m.halt();
+			break;
+		case ROT:
+			rot(m, arg);
+			break;
+		default:
+			throw new IllegalArgumentException("Illegal opcode " + opCode);
+		}
+	}
+
+	/**
+	 * ROT: rotates the cells start...start+length-1 by move places, where
+	 * start, length and move are the cells at arg, arg+1 and arg+2, and
+	 * leaves the last value moved in the accumulator (see
+	 * MachineModel.rotate). It throws IllegalArgumentException if start or
+	 * length is negative, the range goes past the end of memory or the range
+	 * overlaps the three argument cells.
+	 * @param m the machine
+	 * @param arg the address of start, length and move
+	 */
+	private static void rot(MachineModel m, int arg) {
+		m.setAccumulator(MachineModel.rotate(m.getMemory(), arg, m.getAccumulator()));
+	}
+}
@@ -0,0 +1,289 @@
+package pippin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Translates a verified Pippin program into a JVM class so that HotSpot can
+ * optimise it like ordinary Java. The accumulator, program counter and step
+ * count are locals, memory is read and written through the Memory methods,
+ * which HotSpot inlines, and every instruction is a case of a switch on the
+ * program counter. Straight-line code simply
+ * falls through from one case to the next and JUMP/JMPZ continue the switch
+ * loop, so every basic block becomes a run of Java statements. The program
+ * is cut into segments of SEGMENT instructions, one method each, to keep the
+ * methods small enough for HotSpot to compile.
+ *
+ * The generated source is compiled in memory with the javax.tools compiler.
+ * If there is no compiler (the program runs on a JRE) or compilation fails,
+ * compile returns null and the caller keeps interpreting.
+ */
+public class JitCompiler {
+	/**
+	 * A compiled program. run executes from state.programCounter until the
+	 * program halts, maxSteps is reached, an instruction throws or the
+	 * program counter leaves the program, and always leaves the registers
+	 * and step count in state.
+	 */
+	public interface Compiled {
+		void run(Memory memory, State state, long maxSteps);
+	}
+
+	/**
+	 * The registers shared between the interpreter and the compiled code.
+	 */
+	public static final class State {
+		public int accumulator;
+		public int programCounter;
+		public long steps;
+		public boolean halted;
+	}
+
+	private static final int SEGMENT = 128;
+	private static final AtomicInteger classCount = new AtomicInteger();
+	/**
+	 * The most programs kept compiled. Each one holds a generated class and
+	 * its class loader, so the least recently used are dropped beyond this.
+	 */
+	private static final int CACHE_SIZE = 64;
+	private static final Map<ProgramKey, Compiled> cache = new LinkedHashMap<ProgramKey, Compiled>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ProgramKey, Compiled> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	/**
+	 * Compiles a program. The last CACHE_SIZE programs compiled are taken from
+	 * a cache, so reloading the same program does not run javac again.
+	 * @param code the program, which must have passed the Verifier
+	 * @return the compiled program or null if it could not be compiled
+	 */
+	public static Compiled compile(Code code) {
+		long[] words = new long[code.getProgramSize()];
+		for(int i = 0; i < words.length; i++) {
+			words[i] = code.getWord(i);
+		}
+		ProgramKey key = new ProgramKey(words);
+		synchronized(cache) {
+			if(cache.containsKey(key)) {
+				return cache.get(key);
+			}
+		}
+		Compiled compiled = null;
+		try {
+			String name = "PippinProgram" + classCount.incrementAndGet();
+			compiled = (Compiled)define(name, generate(name, words))
+					.getDeclaredConstructor().newInstance();
+		} catch(ReflectiveOperationException | RuntimeException | LinkageError e) {
+			compiled = null;
+		}
+		synchronized(cache) {
+			cache.put(key, compiled);
+		}
+		return compiled;
+	}
+
+	/**
+	 * ROT for compiled code, which only has the memory and the accumulator.
+	 * @param memory the data memory
+	 * @param arg the address of the start, length and move values
+	 * @param accumulator the accumulator before the ROT
+	 * @return the accumulator after the ROT
+	 */
+	public static int rotate(Memory memory, int arg, int accumulator) {
+		return MachineModel.rotate(memory, arg, accumulator);
+	}
+
+	static String generate(String name, long[] words) {
+		StringBuilder src = new StringBuilder();
+		src.append("public final class ").append(name)
+			.append(" implements pippin.JitCompiler.Compiled {\n");
+		src.append("public void run(pippin.Memory m, pippin.JitCompiler.State s, long max) {\n");
+		src.append("for(;;) {\n");
+		src.append("int pc = s.programCounter;\n");
+		src.append("if(pc < 0 || pc >= ").append(words.length).append(") return;\n");
+		src.append("boolean more;\n");
+		src.append("switch(pc / ").append(SEGMENT).append(") {\n");
+		for(int seg = 0; seg * SEGMENT < words.length; seg++) {
+			src.append("case ").append(seg).append(": more = seg").append(seg)
+				.append("(m, s, max); break;\n");
+		}
+		src.append("default: return;\n}\n");
+		src.append("if(!more) return;\n}\n}\n");
+		for(int seg = 0; seg * SEGMENT < words.length; seg++) {
+			int lo = seg * SEGMENT;
+			int hi = Math.min(words.length, lo + SEGMENT);
+			src.append("private static boolean seg").append(seg)
+				.append("(pippin.Memory m, pippin.JitCompiler.State s, long max) {\n");
+			src.append("int acc = s.accumulator;\nint pc = s.programCounter;\nlong steps = s.steps;\n");
+			src.append("try {\nfor(;;) {\nswitch(pc) {\n");
+			for(int i = lo; i < hi; i++) {
+				src.append("case ").append(i).append(":\n");
+				src.append("pc = ").append(i).append(";\n");
+				src.append("if(steps == max) return false;\n");
+				instruction(src, words[i]);
+			}
+			src.append("case ").append(hi).append(":\npc = ").append(hi).append(";\nreturn true;\n");
+			src.append("default:\nreturn true;\n}\n}\n");
+			src.append("} finally {\ns.accumulator = acc;\ns.programCounter = pc;\ns.steps = steps;\n}\n}\n");
+		}
+		src.append("}\n");
+		return src.toString();
+	}
+
+	private static void instruction(StringBuilder src, long word) {
+		int op = Code.op(word);
+		int arg = Code.arg(word);
+		String value = operand(arg, Code.level(word));
+		switch(op) {
+		case InstructionSet.NOP:
+			break;
+		case InstructionSet.LOD:
+			src.append("acc = ").append(value).append(";\n");
+			break;
+		case InstructionSet.STO:
+			src.append("m.setData(").append(operand(arg, Code.level(word) - 1)).append(", acc);\n");
+			break;
+		case InstructionSet.ADD:
+			src.append("acc += ").append(value).append(";\n");
+			break;
+		case InstructionSet.SUB:
+			src.append("acc -= ").append(value).append(";\n");
+			break;
+		case InstructionSet.MUL:
+			src.append("acc *= ").append(value).append(";\n");
+			break;
+		case InstructionSet.DIV:
+			src.append("{\nint d = ").append(value).append(";\n");
+			src.append("if(d == 0) throw new pippin.DivideByZeroException(\"Division by Zero\");\n");
+			src.append("acc /= d;\n}\n");
+			break;
+		case InstructionSet.AND:
+			src.append("acc = (").append(value).append(" != 0 && acc != 0) ? 1 : 0;\n");
+			break;
+		case InstructionSet.NOT:
+			src.append("acc = acc == 0 ? 1 : 0;\n");
+			break;
+		case InstructionSet.CMPZ:
+			src.append("acc = m.getData(").append(literal(arg)).append(") == 0 ? 1 : 0;\n");
+			break;
+		case InstructionSet.CMPL:
+			src.append("acc = m.getData(").append(literal(arg)).append(") < 0 ? 1 : 0;\n");
+			break;
+		case InstructionSet.JUMP:
+			src.append("{\nint t = ").append(value).append(";\nsteps++;\npc = t;\ncontinue;\n}\n");
+			return;
+		case InstructionSet.JMPZ:
+			src.append("{\nint t = ").append(value).append(";\nsteps++;\n");
+			src.append("if(acc == 0) {\npc = t;\ncontinue;\n}\n}\n");
+			return;
+		case InstructionSet.HALT:
+			src.append("steps++;\ns.halted = true;\nreturn false;\n");
+			return;
+		case InstructionSet.ROT: // like the interpreted ROT, leaves pc unchanged
+			src.append("acc = pippin.JitCompiler.rotate(m, ").append(literal(arg)).append(", acc);\n");
+			src.append("steps++;\ncontinue;\n");
+			return;
+		default:
+			throw new IllegalArgumentException("Cannot compile opcode " + op);
+		}
+		src.append("steps++;\n");
+	}
+
+	private static String operand(int arg, int level) {
+		String value = literal(arg);
+		for(int i = 0; i < level; i++) {
+			value = "m.getData(" + value + ")";
+		}
+		return value;
+	}
+
+	private static String literal(int value) {
+		return "(" + value + ")";
+	}
+
+	private static Class<?> define(String name, String source) throws ClassNotFoundException {
+		JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+		if(javac == null) {
+			throw new ClassNotFoundException("No Java compiler available");
+		}
+		Map<String, byte[]> classes = new HashMap<>();
+		StandardJavaFileManager standard = javac.getStandardFileManager(null, null, null);
+		JavaFileManager manager = new ForwardingJavaFileManager<JavaFileManager>(standard) {
+			@Override
+			public JavaFileObject getJavaFileForOutput(Location location, String className,
+					JavaFileObject.Kind kind, FileObject sibling) {
+				return new SimpleJavaFileObject(URI.create("mem:///" + className + ".class"), kind) {
+					@Override
+					public OutputStream openOutputStream() {
+						return new ByteArrayOutputStream() {
+							@Override
+							public void close() {
+								classes.put(className, toByteArray());
+							}
+						};
+					}
+				};
+			}
+		};
+		JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///" + name + ".java"),
+				JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+		List<String> options = Arrays.asList("-nowarn", "-g:none",
+				"-classpath", System.getProperty("java.class.path"));
+		Boolean ok = javac.getTask(null, manager, diagnostic -> {}, options, null,
+				Arrays.asList(file)).call();
+		if(!ok) {
+			throw new ClassNotFoundException("Generated program did not compile");
+		}
+		ClassLoader loader = new ClassLoader(JitCompiler.class.getClassLoader()) {
+			@Override
+			protected Class<?> findClass(String className) throws ClassNotFoundException {
+				byte[] bytes = classes.get(className);
+				if(bytes == null) {
+					throw new ClassNotFoundException(className);
+				}
+				return defineClass(className, bytes, 0, bytes.length);
+			}
+		};
+		return loader.loadClass(name);
+	}
+
+	private static final class ProgramKey {
+		private final long[] words;
+		private final int hash;
+		ProgramKey(long[] words) {
+			this.words = words;
+			this.hash = Arrays.hashCode(words);
+		}
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof ProgramKey && Arrays.equals(words, ((ProgramKey)other).words);
+		}
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
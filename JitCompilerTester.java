@@ -0,0 +1,223 @@
+package pippin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Runs each program on a compiling and an interpreting machine and checks
+ * that they end the same way, with the same registers, steps and memory.
+ */
+public class JitCompilerTester {
+
+	private static final int CELLS = 64;
+
+	/**
+	 * Runs code from the same memory on both machines.
+	 * @param data the first memory cells
+	 * @param maxSteps the step limit
+	 * @return the result of the compiled run
+	 */
+	private static RunResult both(Code code, int[] data, long maxSteps) {
+		MachineModel interpreted = machine(code, data, false);
+		MachineModel compiled = machine(code, data, true);
+		RunResult expected = interpreted.run(maxSteps);
+		RunResult actual = compiled.run(maxSteps);
+		assertSameRun(expected, actual);
+		assertArrayEquals(cells(interpreted), cells(compiled));
+		return actual;
+	}
+
+	private static MachineModel machine(Code code, int[] data, boolean compiling) {
+		MachineModel model = new MachineModel();
+		model.setCode(code);
+		assertTrue(model.getVerificationErrors().isEmpty());
+		model.setCompiling(compiling);
+		for(int i = 0; i < data.length; i++) {
+			model.setData(i, data[i]);
+		}
+		return model;
+	}
+
+	private static void assertSameRun(RunResult expected, RunResult actual) {
+		String at = "after " + expected.getSteps() + " steps";
+		assertEquals(at, expected.getReason(), actual.getReason());
+		assertEquals(at, expected.getSteps(), actual.getSteps());
+		assertEquals(at, expected.getAccumulator(), actual.getAccumulator());
+		assertEquals(at, expected.getProgramCounter(), actual.getProgramCounter());
+		if(expected.getError() != null) {
+			assertEquals(at, expected.getError().getClass(), actual.getError().getClass());
+		}
+	}
+
+	private static int[] cells(MachineModel model) {
+		int[] cells = new int[CELLS];
+		for(int i = 0; i < CELLS; i++) {
+			cells[i] = model.getData(i);
+		}
+		return cells;
+	}
+
+	// counts the cell at 0 down to zero, adding each value to the cell at 1
+	private static Code countDown() {
+		Code code = new Code();
+		code.setCode(InstructionSet.LOD, 1, 1);  // 0: LOD [1
+		code.setCode(InstructionSet.ADD, 0, 1);  // 1: ADD [0
+		code.setCode(InstructionSet.STO, 1, 1);  // 2: STO [1
+		code.setCode(InstructionSet.LOD, 0, 1);  // 3: LOD [0
+		code.setCode(InstructionSet.SUB, 1, 0);  // 4: SUB 1
+		code.setCode(InstructionSet.STO, 0, 1);  // 5: STO [0
+		code.setCode(InstructionSet.JMPZ, 8, 0); // 6: JMPZ 8
+		code.setCode(InstructionSet.JUMP, 0, 0); // 7: JUMP 0
+		code.setCode(InstructionSet.HALT, 0, 0); // 8: HALT
+		return code;
+	}
+
+	@Test
+	// Tests that the compiled code stops at every step limit exactly where
+	// the interpreter does
+	public void testStepLimit() {
+		Code code = countDown();
+		int[] data = {5};
+		int total = (int)both(code, data, 1000).getSteps();
+		for(int max = 0; max < total; max++) {
+			RunResult result = both(code, data, max);
+			assertEquals(RunResult.HaltReason.STEP_LIMIT, result.getReason());
+			assertEquals(max, result.getSteps());
+		}
+		RunResult result = both(code, data, total);
+		assertEquals(RunResult.HaltReason.HALTED, result.getReason());
+		assertEquals(total, result.getSteps());
+	}
+
+	@Test
+	// Tests that a run cut into pieces resumes where the last one stopped
+	public void testResume() {
+		Code code = countDown();
+		MachineModel interpreted = machine(code, new int[] {20}, false);
+		MachineModel compiled = machine(code, new int[] {20}, true);
+		RunResult expected;
+		do {
+			expected = interpreted.run(7);
+			assertSameRun(expected, compiled.run(7));
+			assertArrayEquals(cells(interpreted), cells(compiled));
+		} while(expected.getReason() == RunResult.HaltReason.STEP_LIMIT);
+		assertEquals(RunResult.HaltReason.HALTED, expected.getReason());
+		assertEquals(210, compiled.getData(1));
+	}
+
+	@Test
+	// Tests that ROT leaves the program counter where it is, so it repeats
+	public void testRot() {
+		Code code = new Code();
+		code.setCode(InstructionSet.ROT, 0, 1);  // 0: ROT [0
+		code.setCode(InstructionSet.HALT, 0, 0); // 1: HALT
+		int[] data = {10, 4, 1, 0, 0, 0, 0, 0, 0, 0, 1, 2, 3, 4};
+		for(int max = 0; max < 6; max++) {
+			RunResult result = both(code, data, max);
+			assertEquals(RunResult.HaltReason.STEP_LIMIT, result.getReason());
+			assertEquals(0, result.getProgramCounter());
+		}
+	}
+
+	@Test
+	// Tests that division by zero is reported after the steps before it
+	public void testDivideByZero() {
+		Code code = new Code();
+		code.setCode(InstructionSet.LOD, 5, 0);  // 0: LOD 5
+		code.setCode(InstructionSet.DIV, 0, 1);  // 1: DIV [0
+		code.setCode(InstructionSet.HALT, 0, 0); // 2: HALT
+		RunResult result = both(code, new int[] {0}, 100);
+		assertEquals(RunResult.HaltReason.ERROR, result.getReason());
+		assertTrue(result.getError() instanceof DivideByZeroException);
+		assertEquals(1, result.getSteps());
+		assertEquals(1, result.getProgramCounter());
+	}
+
+	@Test
+	// Tests that a jump out of the program is reported like the interpreter
+	// reports it, whether the target is past the end or negative
+	public void testJumpOutOfRange() {
+		Code code = new Code();
+		code.setCode(InstructionSet.LOD, 3, 0);  // 0: LOD 3
+		code.setCode(InstructionSet.JUMP, 0, 1); // 1: JUMP [0
+		code.setCode(InstructionSet.HALT, 0, 0); // 2: HALT
+		for(int target : new int[] {2, 3, 500, -1}) {
+			RunResult result = both(code, new int[] {target}, 100);
+			if(target == 2) {
+				assertEquals(RunResult.HaltReason.HALTED, result.getReason());
+			} else {
+				assertEquals(RunResult.HaltReason.ERROR, result.getReason());
+				assertEquals(2, result.getSteps());
+				assertEquals(target, result.getProgramCounter());
+			}
+		}
+	}
+
+	@Test
+	// Tests programs longer than one segment of 128 instructions, falling
+	// through and jumping across the segment boundaries
+	public void testSegments() {
+		Code code = new Code();
+		code.setCode(InstructionSet.JUMP, 200, 0);   // 0: JUMP 200
+		for(int i = 1; i < 255; i++) {
+			if(i == 200) {
+				code.setCode(InstructionSet.JMPZ, 126, 0); // 200: JMPZ 126, taken the first time
+			} else {
+				code.setCode(InstructionSet.ADD, 1, 0);
+			}
+		}
+		code.setCode(InstructionSet.HALT, 0, 0);       // 255: HALT
+		int total = (int)both(code, new int[0], 10_000).getSteps();
+		assertEquals(2 + (200 - 126) + 1 + (255 - 201) + 1, total);
+		for(int max = 0; max <= total; max++) {
+			both(code, new int[0], max);
+		}
+	}
+
+	@Test
+	// Tests that compiling the same program again takes it from the cache,
+	// and that the least recently used program is dropped when it is full
+	public void testCache() {
+		Code first = program(-1);
+		Code second = program(-2);
+		JitCompiler.Compiled compiledFirst = JitCompiler.compile(first);
+		JitCompiler.Compiled compiledSecond = JitCompiler.compile(second);
+		assertNotNull(compiledFirst);
+		assertSame(compiledFirst, JitCompiler.compile(program(-1)));
+		// 62 more fill the cache of 64, then the first is used again so the
+		// one that pushes the cache over drops the second
+		for(int i = 0; i < 62; i++) {
+			JitCompiler.compile(program(i));
+		}
+		assertSame(compiledFirst, JitCompiler.compile(first));
+		JitCompiler.compile(program(62));
+		assertSame(compiledFirst, JitCompiler.compile(first));
+		assertNotSame(compiledSecond, JitCompiler.compile(second));
+	}
+
+	// values no other tester loads, so the programs are not already cached
+	private static Code program(int value) {
+		Code code = new Code();
+		code.setCode(InstructionSet.LOD, 0x7E570000 + value, 0);
+		code.setCode(InstructionSet.HALT, 0, 0);
+		return code;
+	}
+
+	@Test
+	// Tests that a program the compiler cannot handle gives null, so the
+	// machine keeps interpreting it
+	public void testNotCompiled() {
+		Code code = new Code();
+		code.setCode(0xE, 0, 0);
+		code.setCode(InstructionSet.HALT, 0, 0);
+		assertNull(JitCompiler.compile(code));
+		assertNull(JitCompiler.compile(code));
+	}
+}
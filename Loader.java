@@ -1,40 +1,186 @@
 package pippin;
 
-import java.util.Scanner;
-
-import javax.swing.JOptionPane;
-
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.NoSuchElementException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
 
+/**
+ * Loads pexe files: lines of "op arg level" in hex, a line with -1, then
+ * lines of "address value" in hex. The file is read in blocks through a
+ * char buffer and the hex numbers are parsed straight from the buffer, so
+ * no String or Scanner is made per line. A number may have a leading '-'
+ * and 8 digit numbers such as ffffffff wrap around to negative ints, which
+ * is what Integer.toHexString writes for negative values.
+ *
+ * Files that start with the magic number of BinaryFormat are loaded as
+ * binary executables instead.
+ */
 public class Loader {
-	public static void load(MachineModel model, Code code, File file) throws FileNotFoundException {
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int MAX_TOKENS = 3;
+
+	/**
+	 * Loads the program of a pexe file into code and its data into the
+	 * memory of the model. Lines with errors are skipped and reported.
+	 * @param model the machine whose memory receives the data
+	 * @param code the code that receives the program
+	 * @param file the pexe file
+	 * @return the errors keyed by line number, empty if the file loaded
+	 * @throws IOException if the file cannot be read
+	 */
+	public static Map<Integer, String> load(MachineModel model, Code code, File file) throws IOException {
 		if(model == null || code == null || file == null) {
-			return;
-		}
-		try( Scanner input = new Scanner(file)) {
-			boolean incode = true;
-			while(input.hasNextLine()){
-				String line = input.nextLine();
-				Scanner parser = new Scanner(line);
-				int first = parser.nextInt(16);
-				if(incode && first == -1){
+			return new TreeMap<>();
+		}
+		if(BinaryFormat.isBinary(file)) {
+			return BinaryFormat.load(model, code, file);
+		}
+		try(Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.US_ASCII)) {
+			return load(model, code, reader);
+		}
+	}
+
+	/**
+	 * Loads a pexe program from any Reader, see load(MachineModel, Code, File).
+	 * @param model the machine whose memory receives the data
+	 * @param code the code that receives the program
+	 * @param reader the text of the pexe file, which is not closed
+	 * @return the errors keyed by line number, empty if the text loaded
+	 * @throws IOException if the reader fails
+	 */
+	public static Map<Integer, String> load(MachineModel model, Code code, Reader reader) throws IOException {
+		Parser parser = new Parser(model, code);
+		char[] buffer = new char[BUFFER_SIZE];
+		int n;
+		char last = '\n';
+		while((n = reader.read(buffer)) >= 0) {
+			for(int i = 0; i < n; i++) {
+				parser.accept(buffer[i]);
+			}
+			if(n > 0) {
+				last = buffer[n - 1];
+			}
+		}
+		if(last != '\n') {
+			// the text did not end with a newline
+			parser.accept('\n');
+		}
+		return parser.errors;
+	}
+
+	/**
+	 * The state of the parse between two characters.
+	 */
+	private static final class Parser {
+		private final MachineModel model;
+		private final Code code;
+		private final Map<Integer, String> errors = new TreeMap<>();
+		private final int[] tokens = new int[MAX_TOKENS];
+		private int count = 0;          // the numbers found on the line so far
+		private long value = 0;         // the number being parsed
+		private int digits = 0;         // the hex digits of the number so far
+		private boolean negative = false;
+		private boolean inNumber = false;
+		private String lineError = null;
+		private int line = 1;
+		private boolean incode = true;
+
+		Parser(MachineModel model, Code code) {
+			this.model = model;
+			this.code = code;
+		}
+
+		void accept(char c) {
+			int digit = c < 128 ? Character.digit(c, 16) : -1;
+			if(digit >= 0) {
+				if(!inNumber) {
+					startNumber(false);
+				}
+				value = (value << 4) | digit;
+				if(++digits > 8) {
+					error("number has more than 8 hex digits");
+				}
+				return;
+			}
+			if(c == '-' && !inNumber) {
+				startNumber(true);
+				return;
+			}
+			boolean space = c == ' ' || c == '\t' || c == '\r' || c == '\n';
+			if(!space) {
+				error("'" + c + "' is not a hex digit");
+				return;
+			}
+			if(inNumber) {
+				endNumber();
+			}
+			if(c == '\n') {
+				endLine();
+			}
+		}
+
+		private void startNumber(boolean minus) {
+			inNumber = true;
+			negative = minus;
+			value = 0;
+			digits = 0;
+		}
+
+		private void endNumber() {
+			inNumber = false;
+			if(digits == 0) {
+				error("'-' without a number");
+			}
+			if(count < MAX_TOKENS) {
+				tokens[count] = negative ? -(int)value : (int)value;
+			}
+			count++;
+		}
+
+		private void endLine() {
+			if(lineError == null && count > 0) {
+				if(incode && tokens[0] == -1) {
 					incode = false;
+				} else {
+					lineError = store(model, code, incode, tokens, count);
 				}
-				else if(incode) {
-					int arg = parser.nextInt(16);
-					int level = parser.nextInt(16);
-					code.setCode(first,arg,level);
+			}
+			if(lineError != null) {
+				errors.put(line, "Error on line " + line + ": " + lineError);
+			}
+			line++;
+			count = 0;
+			lineError = null;
+		}
+
+		private void error(String message) {
+			if(lineError == null) {
+				lineError = message;
+			}
+		}
+	}
+
+	private static String store(MachineModel model, Code code, boolean incode, int[] tokens, int count) {
+		try {
+			if(incode) {
+				if(count != 3) {
+					return "an instruction needs op, arg and level";
 				}
-				else {
-					int value = parser.nextInt(16);
-					model.setData(first, value);
+				code.setCode(tokens[0], tokens[1], tokens[2]);
+			} else {
+				if(count != 2) {
+					return "data needs an address and a value";
 				}
-				parser.close();
+				model.setData(tokens[0], tokens[1]);
 			}
-		} catch (ArrayIndexOutOfBoundsException e) {JOptionPane.showMessageDialog(null,e.getMessage(),"Failure loading data", JOptionPane.WARNING_MESSAGE);
-		} catch (NoSuchElementException e) {JOptionPane.showMessageDialog(null,"NoSuchElementException","Failure loading data", JOptionPane.WARNING_MESSAGE);
+		} catch (ArrayIndexOutOfBoundsException e) {
+			return e.getMessage();
 		}
+		return null;
 	}
-}
\ No newline at end of file
+}
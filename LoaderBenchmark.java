@@ -0,0 +1,86 @@
+package pippin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Scanner;
+
+/**
+ * Times loading a generated pexe file of several megabytes with Loader and
+ * with the Scanner per line parsing that Loader used to do, which is kept
+ * here as the baseline, and loading the same program from a binary
+ * executable written with BinaryFormat.
+ */
+public class LoaderBenchmark {
+	private static final int INSTRUCTIONS = 200_000;
+	private static final int CELLS = 400_000;
+
+	private static void scannerLoad(MachineModel model, Code code, File file) throws IOException {
+		try(Scanner input = new Scanner(file)) {
+			boolean incode = true;
+			while(input.hasNextLine()){
+				String line = input.nextLine();
+				Scanner parser = new Scanner(line);
+				int first = parser.nextInt(16);
+				if(incode && first == -1){
+					incode = false;
+				}
+				else if(incode) {
+					int arg = parser.nextInt(16);
+					int level = parser.nextInt(16);
+					code.setCode(first,arg,level);
+				}
+				else {
+					int value = parser.nextInt(16);
+					model.setData(first, value);
+				}
+				parser.close();
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		File file = File.createTempFile("bench", ".pexe");
+		file.deleteOnExit();
+		try(PrintWriter out = new PrintWriter(file)) {
+			for(int i = 0; i < INSTRUCTIONS; i++) {
+				out.println(Integer.toHexString(1 + i % 10) + " " + Integer.toHexString(i % CELLS) + " " + (i % 3));
+			}
+			out.println(-1);
+			for(int i = 0; i < CELLS; i++) {
+				// Scanner cannot read the 8 digit form of negative numbers
+				out.println(Integer.toHexString(i) + " " + Integer.toHexString(i * 7919 & 0x7FFFFFFF));
+			}
+		}
+		System.out.printf("%s: %.1f MB%n", file.getName(), file.length() / 1e6);
+		MachineModel model = new MachineModel(false, CELLS, INSTRUCTIONS);
+		File binary = File.createTempFile("bench", "." + BinaryFormat.EXTENSION);
+		binary.deleteOnExit();
+		Code program = new Code(INSTRUCTIONS);
+		Loader.load(model, program, file);
+		int[] addresses = new int[CELLS];
+		int[] values = new int[CELLS];
+		for(int i = 0; i < CELLS; i++) {
+			addresses[i] = i;
+			values[i] = model.getData(i);
+		}
+		BinaryFormat.write(binary, program, addresses, values, CELLS);
+		System.out.printf("%s: %.1f MB%n", binary.getName(), binary.length() / 1e6);
+		for(int round = 1; round <= 5; round++) {
+			model.clear();
+			long begin = System.nanoTime();
+			scannerLoad(model, new Code(INSTRUCTIONS), file);
+			long old = System.nanoTime() - begin;
+			model.clear();
+			begin = System.nanoTime();
+			Loader.load(model, new Code(INSTRUCTIONS), file);
+			long now = System.nanoTime() - begin;
+			model.clear();
+			begin = System.nanoTime();
+			Loader.load(model, new Code(INSTRUCTIONS), binary);
+			long bin = System.nanoTime() - begin;
+			System.out.printf("round %d: Scanner %7.1f ms, Loader %6.1f ms, binary %5.1f ms%n",
+					round, old / 1e6, now / 1e6, bin / 1e6);
+		}
+	}
+}
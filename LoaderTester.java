@@ -0,0 +1,122 @@
+package pippin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LoaderTester {
+
+	MachineModel model;
+	Code code;
+
+	@Before
+	public void setup() {
+		model = new MachineModel(true);
+		code = new Code();
+	}
+
+	@Test
+	// Tests a program with code, data and negative numbers in both forms
+	public void testLoad() throws IOException {
+		Map<Integer, String> errors = Loader.load(model, code,
+				new StringReader("1 A 1\n3 -5 0\r\nf 0 0\n-1\n0 ffffffff\n1F -7FF\n"));
+		assertTrue(errors.isEmpty());
+		assertEquals(3, code.getProgramSize());
+		assertEquals(3, code.getOp(1));
+		assertEquals(-5, code.getArg(1));
+		assertEquals(0xF, code.getOp(2));
+		assertEquals(-1, model.getData(0));
+		assertEquals(-0x7FF, model.getData(0x1F));
+	}
+
+	@Test
+	// Tests that a last line without a newline is loaded
+	public void testNoFinalNewline() throws IOException {
+		assertTrue(Loader.load(model, code, new StringReader("1 2 0\n-1\n4 5")).isEmpty());
+		assertEquals(5, model.getData(4));
+	}
+
+	@Test
+	// Tests that a binary executable loads the same program and data
+	public void testBinary() throws IOException {
+		File file = File.createTempFile("loader", "." + BinaryFormat.EXTENSION);
+		file.deleteOnExit();
+		Code written = new Code();
+		written.setCode(1, -5, 0);
+		written.setCode(2, 0x1F, 1);
+		written.setCode(0xF, 0, 0);
+		int[] addresses = {5, 3, 4, 1000, 5};
+		int[] values = {1, -2, 3, 4, 7};
+		BinaryFormat.write(file, written, addresses, values, 5);
+		MachineModel big = new MachineModel(true, 2048, Code.CODE_MAX);
+		assertTrue(Loader.load(big, code, file).isEmpty());
+		assertEquals(3, code.getProgramSize());
+		assertEquals(-5, code.getArg(0));
+		assertEquals(1, code.getIndirectionLevel(1));
+		assertEquals(-2, big.getData(3));
+		assertEquals(3, big.getData(4));
+		assertEquals(7, big.getData(5));
+		assertEquals(4, big.getData(1000));
+		// a damaged file is reported, not thrown
+		try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 4);
+		}
+		assertTrue(Loader.load(big, new Code(), file).containsKey(0));
+	}
+
+	@Test
+	// Tests that bad lines are reported by line number and the rest is loaded
+	public void testErrors() throws IOException {
+		Map<Integer, String> errors = Loader.load(model, code,
+				new StringReader("1 2 0\n1 2\n1 x 0\n\n-1\n4 5\n5 123456789\n10000 1\n6 7\n"));
+		assertEquals(4, errors.size());
+		assertTrue(errors.containsKey(2));
+		assertTrue(errors.containsKey(3));
+		assertTrue(errors.containsKey(7));
+		assertTrue(errors.containsKey(8));
+		assertEquals(1, code.getProgramSize());
+		assertEquals(5, model.getData(4));
+		assertEquals(7, model.getData(6));
+	}
+
+	@Test
+	// Tests that restoring the snapshot taken after loading undoes a run
+	public void testSnapshotRestore() throws IOException {
+		// count the cell at 0 down to zero, then halt
+		assertTrue(Loader.load(model, code,
+				new StringReader("1 0 1\n4 1 0\n2 0 1\nc 5 0\nb 0 0\nf 0 0\n-1\n0 3\n")).isEmpty());
+		model.setCode(code);
+		MachineModel.Snapshot snapshot = model.snapshot();
+		for(int round = 0; round < 2; round++) {
+			model.run(100);
+			assertEquals(0, model.getData(0));
+			assertEquals(5, model.getProgramCounter());
+			model.restore(snapshot);
+			assertEquals(3, model.getData(0));
+			assertEquals(0, model.getProgramCounter());
+			assertEquals(6, model.getCode().getProgramSize());
+		}
+		model.clear();
+		model.restore(snapshot);
+		assertEquals(6, model.getCode().getProgramSize());
+	}
+
+	@Test
+	// Tests that the argument of HALT is not taken for a jump target when
+	// the program is installed
+	public void testHaltArgument() throws IOException {
+		assertTrue(Loader.load(model, code, new StringReader("1 5 0\nf 25 0\n-1\n")).isEmpty());
+		model.setCode(code);
+		assertTrue(model.getVerificationErrors().isEmpty());
+		assertEquals(RunResult.HaltReason.HALTED, model.run(10).getReason());
+		assertEquals(5, model.getAccumulator());
+	}
+}
@@ -0,0 +1,70 @@
+package pippin;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * What changed in the machine since the listeners were last told. Changes
+ * posted during one frame are merged into a single event, so one event can
+ * have several kinds. When it has MEMORY the cells firstCell to lastCell
+ * include every written cell; MachineView.nextChangedIndex finds them.
+ */
+public class MachineEvent {
+	public enum Kind {
+		/** the accumulator or the program counter may have changed */
+		REGISTERS,
+		/** data memory cells were written */
+		MEMORY,
+		/** a new program was loaded */
+		CODE_LOADED,
+		/** the machine was cleared */
+		CLEARED,
+		/** the state of the simulator (running, auto-stepping...) changed */
+		STATE
+	}
+	private final Set<Kind> kinds;
+	private final int firstCell;
+	private final int lastCell;
+	private final boolean allMemory;
+
+	public MachineEvent(Set<Kind> kinds, int firstCell, int lastCell, boolean allMemory) {
+		this.kinds = EnumSet.copyOf(kinds);
+		this.firstCell = firstCell;
+		this.lastCell = lastCell;
+		this.allMemory = allMemory;
+	}
+	public boolean has(Kind kind) {
+		return kinds.contains(kind);
+	}
+	/**
+	 * @return the first written cell, or -1 without MEMORY
+	 */
+	public int getFirstCell() {
+		return firstCell;
+	}
+	/**
+	 * @return the last written cell, or -1 without MEMORY
+	 */
+	public int getLastCell() {
+		return lastCell;
+	}
+	/**
+	 * @return true if every cell has to be treated as written, e.g. after
+	 * the memory was cleared
+	 */
+	public boolean isAllMemory() {
+		return allMemory;
+	}
+	/**
+	 * @param lower the first cell of a range
+	 * @param upper the cell after the range
+	 * @return true if written cells may lie in the range
+	 */
+	public boolean touches(int lower, int upper) {
+		return has(Kind.MEMORY) && firstCell < upper && lastCell >= lower;
+	}
+	@Override
+	public String toString() {
+		return "MachineEvent" + kinds + (has(Kind.MEMORY) ? " [" + firstCell + "-" + lastCell + "]" : "");
+	}
+}
@@ -0,0 +1,74 @@
+package pippin;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Collects the changes posted by MachineView and delivers them to the
+ * listeners as one MachineEvent per frame. Posting only records the kind
+ * of change; the first post of a frame schedules a delivery with
+ * invokeLater, so a burst of posts from one action on the Event Dispatch
+ * Thread costs the listeners a single update. The written memory cells are
+ * taken from the dirty set of Memory at delivery and the set is cleared
+ * once every listener has seen them.
+ */
+public class MachineEventBus {
+	private final MachineModel model;
+	private final List<MachineListener> listeners = new ArrayList<>();
+	private final EnumSet<MachineEvent.Kind> pending = EnumSet.noneOf(MachineEvent.Kind.class);
+	private boolean scheduled = false;
+
+	public MachineEventBus(MachineModel model) {
+		this.model = model;
+	}
+
+	public void addListener(MachineListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(MachineListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Records changes to be delivered with the next event. Must be called on
+	 * the Event Dispatch Thread.
+	 * @param kinds what changed
+	 */
+	public void post(MachineEvent.Kind... kinds) {
+		for(MachineEvent.Kind kind : kinds) {
+			pending.add(kind);
+		}
+		if(!scheduled) {
+			scheduled = true;
+			SwingUtilities.invokeLater(this::deliver);
+		}
+	}
+
+	/**
+	 * Delivers the pending changes now, on the calling thread.
+	 */
+	public void deliver() {
+		scheduled = false;
+		// the lock keeps a background run from changing the machine meanwhile
+		synchronized(model) {
+			Memory memory = model.getMemory();
+			int first = memory.nextDirty(0);
+			if(first >= 0) {
+				pending.add(MachineEvent.Kind.MEMORY);
+			}
+			if(pending.isEmpty()) {
+				return;
+			}
+			MachineEvent event = new MachineEvent(pending, first, memory.lastDirty(), memory.isAllDirty());
+			pending.clear();
+			for(MachineListener listener : listeners) {
+				listener.machineChanged(event);
+			}
+			memory.clearDirty();
+		}
+	}
+}
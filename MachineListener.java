@@ -0,0 +1,13 @@
+package pippin;
+
+/**
+ * A part of the GUI that is told what changed in the machine.
+ */
+public interface MachineListener {
+	/**
+	 * Called on the Event Dispatch Thread while the machine is locked, at
+	 * most once per frame.
+	 * @param event what changed since the previous call
+	 */
+	void machineChanged(MachineEvent event);
+}
@@ -1,5 +1,9 @@
 package pippin;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Observable;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.Map;
 
@@ -8,12 +12,31 @@ public class MachineModel extends Observable{
 		private int accumulator;
 		private int programCounter;
 	}
-	public final Map<Integer, Instruction> INSTRUCTION_MAP = new TreeMap<>();
+	/**
+	 * The instructions of this machine by opcode, as a read-only view of the
+	 * shared InstructionSet. Each Instruction executes on this machine with
+	 * the level checks of InstructionSet.execute.
+	 */
+	public final Map<Integer, Instruction> INSTRUCTION_MAP = new InstructionView();
+	/**
+	 * The Instructions handed out by get and INSTRUCTION_MAP, made on first
+	 * use so that creating a machine allocates nothing for them
+	 */
+	private Instruction[] bound;
 	private Registers cpu = new Registers();
-	private Memory memory = new Memory();
+	private Memory memory;
+	private int codeSize;
 	private boolean withGUI = false;
 	private boolean running = false;
 	private Code code;
+	private boolean verified = false;
+	private boolean compiling = false;
+	private JitCompiler.Compiled compiled;
+	private Code compiledCode;
+	private int[] fusion = new int[0];
+	private long fusedInstructions = 0;
+	private UndoLog undo;
+	private Map<Integer, String> verificationErrors = new TreeMap<>();
 	
 
 	public MachineModel() {
@@ -21,624 +44,93 @@ public class MachineModel extends Observable{
 	}
 	
 	public MachineModel(boolean withGUI) {
-		
+		this(withGUI, Memory.DATA_SIZE, Code.CODE_MAX);
+	}
+
+	/**
+	 * Creates a machine with its own memory and code sizes, so machines of
+	 * different sizes can run side by side in the same program.
+	 * @param withGUI true if the machine is driven by the GUI
+	 * @param dataSize the number of data memory cells. Memory is allocated in
+	 * pages as the program writes to it, so a large size costs nothing until
+	 * it is used.
+	 * @param codeSize the largest number of instructions a program may have
+	 */
+	public MachineModel(boolean withGUI, int dataSize, int codeSize) {
 		this.withGUI = withGUI;
-		// ADD
-		INSTRUCTION_MAP.put(0x3, (arg, level) -> {
-			if(level<0 || level>2) {throw new IllegalArgumentException("ADD level must be 0-2");}
-			if(level != 0) {INSTRUCTION_MAP.get(0x3).execute(memory.getData(arg), level-1);} 
-			else {
-				cpu.accumulator += arg;
-				cpu.programCounter += 1; 
-			}
-		});
-		// NOP
-		INSTRUCTION_MAP.put(0x0, (arg, level) -> {
-			if(level != 0){throw new IllegalArgumentException("NOP cannot be above 0");}
-			else{cpu.programCounter += 1;}
-		});
-		// LOD
-		INSTRUCTION_MAP.put(0x1, (arg,level) -> {
-			if(level<0 || level>2) {throw new IllegalArgumentException("LOD level must be 0-2");}
-			if(level != 0) {INSTRUCTION_MAP.get(0x1).execute(memory.getData(arg),level-1);} 
-			else {
-				cpu.accumulator = arg;
-				cpu.programCounter += 1;
-			}
-		});
-		// STO
-		INSTRUCTION_MAP.put(0x2, (arg,level) -> {
-			if(level < 1 || level > 2){	throw new IllegalArgumentException("STO level must be 1 or 2");}
-			if(level == 1){
-				memory.setData(arg,cpu.accumulator);
-				cpu.programCounter += 1;
-			}
-			else {INSTRUCTION_MAP.get(0x2).execute(memory.getData(arg),level-1);}
-		});
-		// SUB
-		INSTRUCTION_MAP.put(0x4, (arg,level) -> {
-			if(level<0 || level>2) {throw new IllegalArgumentException("SUB level must be 0-2");}
-			if(level != 0) {INSTRUCTION_MAP.get(0x4).execute(memory.getData(arg),level-1);}
-			else {
-				cpu.accumulator -= arg;
-				cpu.programCounter += 1;
-			}
-		});
-		// MUL
-		INSTRUCTION_MAP.put(0x5, (arg,level) ->{
-			if(level<0 || level>2) {throw new IllegalArgumentException("MUL level must be 0-2");}
-			if(level != 0) {INSTRUCTION_MAP.get(0x5).execute(memory.getData(arg),level-1);}
-			else {
-				cpu.accumulator *= arg;
-				cpu.programCounter += 1;
-			}
-		});
-		// DIV
-		INSTRUCTION_MAP.put(0x6, (arg, level) -> {
-			if(level <0 || level > 2) {
-				throw new IllegalArgumentException(
-					"Illegal indirection level in DIV instruction");
-			}
-			if(level > 0) {
-				INSTRUCTION_MAP.get(0x6).execute(memory.getData(arg), level-1);
-			}
-			else{
-				if( arg == 0){
-					throw new DivideByZeroException("Division by Zero");
-				}
-				else{
-				cpu.accumulator /= arg;
-				cpu.programCounter ++;
-				}
-			}
-		});
-		// AND
-		INSTRUCTION_MAP.put(0x7, (arg,level) ->{
-			if(level < 0 || level > 1){throw new IllegalArgumentException("AND level must be 0-1");}
-			if(level == 1){INSTRUCTION_MAP.get(0x7).execute(memory.getData(arg),level-1);}
-			else{
-				if(arg != 0 && cpu.accumulator != 0){cpu.accumulator = 1;}
-				else{cpu.accumulator = 0;}
-				cpu.programCounter += 1;
-			}
-		});
-		// JUMP
-		INSTRUCTION_MAP.put(0xB, (arg,level) ->{
-			if(level<0 || level>1){throw new IllegalArgumentException("JUMP level must be 0-1");}
-			if(level == 1){INSTRUCTION_MAP.get(0xB).execute(memory.getData(arg),level-1);}
-			else{
-				cpu.programCounter = arg;
-			}
-		});
-		// JMPZ
-		INSTRUCTION_MAP.put(0xC, (arg,level) ->{
-			if(level<0 || level >1){throw new IllegalArgumentException("JMPZ level must be 0-1");}
-			if(level == 1){INSTRUCTION_MAP.get(0xC).execute(memory.getData(arg),level-1);}
-			else{
-				if(cpu.accumulator == 0){
-					cpu.programCounter = arg;
-				}
-				else{cpu.programCounter += 1;}
-			}
-		});
-		// NOT
-		INSTRUCTION_MAP.put(0x8, (arg,level) ->{
-			if(level != 0){throw new IllegalArgumentException("NOT level must be 0");}
-			else{
-				if(cpu.accumulator == 0){
-					cpu.accumulator = 1;
-				}
-				else {
-					cpu.accumulator = 0;
-				}
-				cpu.programCounter += 1;
-			}
-		});
-		// CMPZ
-		INSTRUCTION_MAP.put(0x9, (arg,level) ->{
-			if(level != 1){throw new IllegalArgumentException("CMPZ level must be 1");}
-			else {
-				if(memory.getData(arg) == 0){
-					cpu.accumulator = 1;
-				}
-				else {
-					cpu.accumulator = 0;
-				}
-				cpu.programCounter += 1;
-			}
-		});
-		// CMPL
-		INSTRUCTION_MAP.put(0xA, (arg,level) ->{
-			if(level != 1){throw new IllegalArgumentException("CMPL level must be 1");}
-			else {
-				if(memory.getData(arg)<0){cpu.accumulator = 1;}
-				else {cpu.accumulator =0;}
-				cpu.programCounter += 1;
-			}
-		});
-		// HALT
-		INSTRUCTION_MAP.put(0xF, (arg,level) -> {
-			halt();
-		});
-		/**
-		 * An instruction which rotates the memory elements which are in the
-		 * range start...start+length -1 by the amount move. The instruction
-		 * will only work if there is no exception thrown. 
-		 * 
-		 * <table BORDER CELLPADDING=3 CELLSPACING=1>
-		 * <caption>Exception Errors</caption>
-		 *  <tr>
-		 *    <td ALIGN=CENTER> <b>{@code Queue} Reason</b></td>
-		 *    <td ALIGN=CENTER> <b>Error</b></td>
-		 *  </tr>
-		 *  <tr>
-		 *    <td>{level != 1}</td>
-		 *    <td>{Illegal Argument Exception}</td>
-		 *  </tr>
-		 *  <tr>
-		 *    <td>{start<0}</td>
-		 *    <td>{IllegalArgumentException}</td>
-		 *  </tr>
-		 *  <tr>
-		 *    <td>{length<0}</td>
-		 *    <td>{IllegalArgumentException}</td>
-		 *  </tr>
-		 *  <tr>
-		 *    <td>{start+length-1>= Memory.DATA_SIZE}</td>
-		 *    <td>{IllegalArgumentException}</td>
-		 *  </tr>
-		 *  <tr>
-		 *    <td>{start<= arg + 2 && start + length -1 <= arg}</td>
-		 *    <td>{IllegalArgumentException}</td>
-		 *  </tr>
-		 * </table>
-		 * 
-		 * Example showing the move of -3
-		 * <br>
-		<table style="text-align: left; width: 30%;" border="0" cellpadding="10"
-		cellspacing="2">
-		<tbody>
-		<tr>
-		<td>
-		<table style="text-align: left; width: 10%;" border="1"
-		cellpadding="2" cellspacing="2">
-		<tbody>
-		<tr>
-		<td style="vertical-align: top;">0<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">1<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">2<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">3<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">4<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">5<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">12<br>
-		</td>
-		<td style="vertical-align: top;">207<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">13<br>
-		</td>
-		<td style="vertical-align: top;">58<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">14<br>
-		</td>
-		<td style="vertical-align: top;">-3<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">207<br>
-		</td>
-		<td style="vertical-align: top;">121<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">208<br>
-		</td>
-		<td style="vertical-align: top;">112<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">209<br>
-		</td>
-		<td style="vertical-align: top;">170<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">210<br>
-		</td>
-		<td style="vertical-align: top;">719<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">211<br>
-		</td>
-		<td style="vertical-align: top;">1254<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">212<br>
-		</td>
-		<td style="vertical-align: top;">6092<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">260<br>
-		</td>
-		<td style="vertical-align: top;">33<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">261<br>
-		</td>
-		<td style="vertical-align: top;">96<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">262<br>
-		</td>
-		<td style="vertical-align: top;">900<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">263<br>
-		</td>
-		<td style="vertical-align: top;">203<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">264<br>
-		</td>
-		<td style="vertical-align: top;">2<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		</tbody>
-		</table>
-		</td>
-		<td>
-		<table style="text-align: left; width: 10%;" border="1"
-		cellpadding="2" cellspacing="2">
-		<tbody>
-		<tr>
-		<td style="vertical-align: top;">0<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">1<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">2<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">3<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">4<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">5<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">12<br>
-		</td>
-		<td style="vertical-align: top;">207<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">13<br>
-		</td>
-		<td style="vertical-align: top;">58<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">14<br>
-		</td>
-		<td style="vertical-align: top;">-3<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">207<br>
-		</td>
-		<td style="vertical-align: top;">719<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">208<br>
-		</td>
-		<td style="vertical-align: top;">1254<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">209<br>
-		</td>
-		<td style="vertical-align: top;">6092<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">210<br>
-		</td>
-		<td style="vertical-align: top;">x1<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">211<br>
-		</td>
-		<td style="vertical-align: top;">x2<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">212<br>
-		</td>
-		<td style="vertical-align: top;">x3<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">260<br>
-		</td>
-		<td style="vertical-align: top;">203<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">261<br>
-		</td>
-		<td style="vertical-align: top;">2<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">262<br>
-		</td>
-		<td style="vertical-align: top;">121<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">263<br>
-		</td>
-		<td style="vertical-align: top;">112<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">264<br>
-		</td>
-		<td style="vertical-align: top;">170<br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		<tr>
-		<td style="vertical-align: top;">...<br>
-		</td>
-		<td style="vertical-align: top;"><br>
-		</td>
-		</tr>
-		</tbody>
-		</table>
-		</td>
-		</tr>
-		</tbody>
-		</table>
-		<br>
-		*
-		@author tmoshie1
-		@author achelli1
-		@param arg which is used to get the 3 values start, length, and move 
-		@para level which must be 1
-		*/
-		INSTRUCTION_MAP.put(0x14, (arg,level) -> {
-			if(level != 1){throw new IllegalArgumentException("ROT level must be 1");}
-			else{
-				int start = memory.getData(arg);
-				int length = memory.getData(arg+1);
-				int move = memory.getData(arg+2);
-				if(start<0 || length<0 || start+length-1>= Memory.DATA_SIZE){
-					throw new IllegalArgumentException("ROT failure");
-				}
-				if(start<= arg + 2 && start + length -1 <= arg){
-					throw new IllegalArgumentException("ROT failure 2");
-				}
-				while(move>0){
-					cpu.accumulator = getData(start+length-1);
-					for(int index = start+length-1; index>start; index--){
-						setData(index, getData(index-1));
-					}
-					setData(start,cpu.accumulator);
-					move--;
-				}
-				while(move<0){
-					cpu.accumulator = getData(start);
-					for(int index = start+1; index<start+length; index++){
-						setData(index-1, getData(index)); 
-					}
-					setData(start+length-1,cpu.accumulator);
-					move++;
-				}
-			}
-		});
+		this.memory = new Memory(dataSize);
+		this.codeSize = codeSize;
 	}
 	
+	/**
+	 * Addressing mode stage for instructions that use a value: level 0 is
+	 * the argument itself (immediate), level 1 the memory cell at the
+	 * argument (direct) and level 2 the cell whose address is stored at the
+	 * argument (indirect). The level must already have been checked.
+	 * @param arg the argument of the instruction
+	 * @param level the indirection level of the instruction
+	 * @return the value the instruction operates on
+	 */
+	int operand(int arg, int level) {
+		if(level == 2) {
+			arg = memory.getData(arg);
+		}
+		if(level >= 1) {
+			arg = memory.getData(arg);
+		}
+		return arg;
+	}
+	/**
+	 * Addressing mode stage for STO: level 1 stores at the argument and
+	 * level 2 stores at the address held in the cell at the argument.
+	 * @param arg the argument of the instruction
+	 * @param level the indirection level of the instruction, 1 or 2
+	 * @return the memory address to write to
+	 */
+	int address(int arg, int level) {
+		return operand(arg, level - 1);
+	}
+
+	/**
+	 * ROT on a memory, shared by the interpreter and JitCompiler.
+	 * Rotating by move one place at a time is the same as rotating once by
+	 * move modulo length, which Memory.rotate does in place in one pass.
+	 * The accumulator ends up holding the last value that the one place at
+	 * a time version would have moved: the new first cell for a positive
+	 * move and the new last cell for a negative one.
+	 * @param memory the data memory
+	 * @param arg the address of the start, length and move values
+	 * @param accumulator the accumulator before the ROT
+	 * @return the accumulator after the ROT
+	 */
+	static int rotate(Memory memory, int arg, int accumulator) {
+		int start = memory.getData(arg);
+		int length = memory.getData(arg+1);
+		int move = memory.getData(arg+2);
+		if(start<0 || length<0 || start+length-1>= memory.size()){
+			throw new IllegalArgumentException("ROT failure");
+		}
+		if(start<= arg + 2 && start + length -1 <= arg){
+			throw new IllegalArgumentException("ROT failure 2");
+		}
+		if(move == 0) {
+			return accumulator;
+		}
+		if(length == 0) {
+			// an empty window copies the neighbouring cell, every repetition the same
+			if(move > 0) {
+				accumulator = memory.getData(start-1);
+				memory.setData(start, accumulator);
+			} else {
+				accumulator = memory.getData(start);
+				memory.setData(start-1, accumulator);
+			}
+			return accumulator;
+		}
+		memory.rotate(start, length, Math.floorMod(move, length));
+		return memory.getData(move > 0 ? start : start + length - 1);
+	}
+
 	public boolean isRunning() {
 		return running;
 	}
@@ -656,28 +148,338 @@ public class MachineModel extends Observable{
 	public Instruction get(Object key) {
         return INSTRUCTION_MAP.get(key);
     }
+	/**
+	 * The instruction for an opcode, bound to this machine. Returns null for
+	 * opcodes that have no instruction, the same as get(Object).
+	 * @param opcode the opcode of the instruction
+	 * @return the instruction or null if the opcode is not defined
+	 */
+	public Instruction get(int opcode) {
+		if(!InstructionSet.isDefined(opcode)) {
+			return null;
+		}
+		if(bound == null) {
+			bound = new Instruction[InstructionSet.OPCODE_LIMIT];
+		}
+		Instruction instruction = bound[opcode];
+		if(instruction == null) {
+			instruction = (arg, level) -> InstructionSet.execute(this, opcode, arg, level);
+			bound[opcode] = instruction;
+		}
+		return instruction;
+	}
+
+	/**
+	 * INSTRUCTION_MAP: the defined opcodes mapped to get(opcode)
+	 */
+	private class InstructionView extends AbstractMap<Integer, Instruction> {
+		@Override
+		public Instruction get(Object key) {
+			return key instanceof Integer ? MachineModel.this.get((int)(Integer)key) : null;
+		}
+		@Override
+		public boolean containsKey(Object key) {
+			return key instanceof Integer && InstructionSet.isDefined((Integer)key);
+		}
+		@Override
+		public Set<Map.Entry<Integer, Instruction>> entrySet() {
+			Set<Map.Entry<Integer, Instruction>> entries = new LinkedHashSet<>();
+			for(int opcode : InstructionSet.OPCODES) {
+				entries.add(new AbstractMap.SimpleImmutableEntry<>(opcode, MachineModel.this.get(opcode)));
+			}
+			return Collections.unmodifiableSet(entries);
+		}
+	}
 	public Code getCode() {
 		return code;
 	}
 	public void step() {
+		boolean recorded = false;
 		try {
-			int pc = cpu.programCounter;
-			int opCode = code.getOp(pc);
-			int arg = code.getArg(pc);
-			int iL = code.getIndirectionLevel(pc);
-			get(opCode).execute(arg, iL);
+			long word = code.getWord(cpu.programCounter);
+			if(undo != null) {
+				recorded = record(word);
+			}
+			if(verified) {
+				InstructionSet.executeVerified(this, Code.op(word), Code.arg(word), Code.level(word));
+			} else {
+				InstructionSet.execute(this, Code.op(word), Code.arg(word), Code.level(word));
+			}
 			}
 			catch(Exception e) {
+				if(recorded) {
+					// the step failed without changing anything, so it is not history
+					undo.undo(memory);
+				}
 				halt();
 				throw e;
 			}
 	}
+
+	/**
+	 * Turns recording of the steps on, or off with null. While a log is set
+	 * every step of step() and run() is recorded, and run() interprets one
+	 * instruction at a time without the JitCompiler or superinstructions.
+	 * @param undo the log, which is cleared
+	 */
+	public void setUndoLog(UndoLog undo) {
+		this.undo = undo;
+		if(undo != null) {
+			undo.clear();
+		}
+	}
+
+	public UndoLog getUndoLog() {
+		return undo;
+	}
+
+	/**
+	 * Goes back over the last steps recorded in the UndoLog, restoring the
+	 * registers and the cells they overwrote. A machine that halted can run
+	 * again afterwards.
+	 * @param steps the number of steps to undo
+	 * @return the number of steps undone, fewer than steps if the history
+	 * is shorter
+	 */
+	public int stepBack(int steps) {
+		int done = 0;
+		while(done < steps && undo != null && !undo.isEmpty()) {
+			cpu.programCounter = undo.lastProgramCounter();
+			cpu.accumulator = undo.lastAccumulator();
+			undo.undo(memory);
+			done++;
+		}
+		if(done > 0) {
+			running = true;
+		}
+		return done;
+	}
+
+	/**
+	 * Adds the instruction about to be executed to the UndoLog, with the
+	 * cell STO writes or the window ROT rotates. Operands that would make
+	 * the instruction fail record no cells, since it writes nothing then.
+	 * @return false if the entry did not fit in the log, which was cleared
+	 */
+	private boolean record(long word) {
+		int pc = cpu.programCounter;
+		int acc = cpu.accumulator;
+		int op = Code.op(word);
+		if(op == InstructionSet.STO) {
+			int address;
+			try {
+				address = address(Code.arg(word), Code.level(word));
+			} catch(RuntimeException e) {
+				address = -1;
+			}
+			if(address >= 0 && address < memory.size()) {
+				return undo.record(pc, acc, memory, address, 1);
+			}
+		} else if(op == InstructionSet.ROT) {
+			int arg = Code.arg(word);
+			if(arg >= 0 && arg <= memory.size() - 3) {
+				int start = memory.getData(arg);
+				int length = memory.getData(arg + 1);
+				int move = memory.getData(arg + 2);
+				if(move != 0 && start >= 0 && length >= 0 && start <= memory.size() - length) {
+					if(length > 0) {
+						return undo.record(pc, acc, memory, start, length);
+					}
+					int cell = move > 0 ? start : start - 1;
+					if(cell >= 0 && cell < memory.size()) {
+						return undo.record(pc, acc, memory, cell, 1);
+					}
+				}
+			}
+		}
+		return undo.record(pc, acc);
+	}
 	
+	/**
+	 * Runs the program without the GUI until it halts, an instruction fails
+	 * or maxSteps instructions have been executed. Unlike step() it does no
+	 * per-instruction exception handling or observer notification.
+	 * @param maxSteps the largest number of instructions to execute
+	 * @return the reason the run stopped, the step count and the registers
+	 */
+	public RunResult run(long maxSteps) {
+		if(compiling && verified && undo == null) {
+			if(compiledCode != code) {
+				compiled = JitCompiler.compile(code);
+				compiledCode = code;
+			}
+			if(compiled != null) {
+				return runCompiled(maxSteps);
+			}
+		}
+		running = true;
+		long steps = 0;
+		RunResult.HaltReason reason = RunResult.HaltReason.STEP_LIMIT;
+		RuntimeException error = null;
+		Code program = code;
+		boolean fast = verified;
+		int[] table = undo == null ? fusion : new int[0];
+		long fusedSteps = 0;
+		long recordedAt = -1;
+		try {
+			while(steps < maxSteps) {
+				int pc = cpu.programCounter;
+				if(fast && pc >= 0 && pc < table.length && table[pc] != SuperInstructions.NONE) {
+					int length = SuperInstructions.length(table[pc]);
+					if(maxSteps - steps >= length) {
+						executeFused(table[pc], pc);
+						steps += length;
+						fusedSteps += length;
+						continue;
+					}
+				}
+				long word = program.getWord(pc);
+				int opCode = Code.op(word);
+				if(undo != null && record(word)) {
+					recordedAt = steps;
+				}
+				if(opCode == InstructionSet.HALT) {
+					steps++;
+					reason = RunResult.HaltReason.HALTED;
+					break;
+				}
+				if(fast) {
+					InstructionSet.executeVerified(this, opCode, Code.arg(word), Code.level(word));
+				} else {
+					InstructionSet.execute(this, opCode, Code.arg(word), Code.level(word));
+				}
+				steps++;
+			}
+		} catch(RuntimeException e) {
+			reason = RunResult.HaltReason.ERROR;
+			error = e;
+			if(recordedAt == steps) {
+				// the failed instruction changed nothing
+				undo.undo(memory);
+			}
+		}
+		fusedInstructions += fusedSteps;
+		if(reason != RunResult.HaltReason.STEP_LIMIT) {
+			running = false;
+		}
+		return new RunResult(reason, steps, cpu.accumulator, cpu.programCounter, error);
+	}
+
+	/**
+	 * Executes the superinstruction starting at pc, see SuperInstructions.
+	 * The operands were checked when the table was built, so none of the
+	 * memory accesses can fail.
+	 * @param kind the kind of superinstruction
+	 * @param pc the line of its first instruction
+	 */
+	private void executeFused(int kind, int pc) {
+		long first = code.getWord(pc);
+		long second = code.getWord(pc + 1);
+		switch(kind) {
+		case SuperInstructions.LOAD_OP:
+			cpu.accumulator = arithmetic(Code.op(second),
+					operand(Code.arg(first), Code.level(first)),
+					operand(Code.arg(second), Code.level(second)));
+			cpu.programCounter = pc + 2;
+			break;
+		case SuperInstructions.LOAD_OP_STORE:
+			cpu.accumulator = arithmetic(Code.op(second),
+					operand(Code.arg(first), Code.level(first)),
+					operand(Code.arg(second), Code.level(second)));
+			memory.setData(Code.arg(code.getWord(pc + 2)), cpu.accumulator);
+			cpu.programCounter = pc + 3;
+			break;
+		case SuperInstructions.TEST_JUMP:
+		case SuperInstructions.TEST_NOT_JUMP:
+			int value = memory.getData(Code.arg(first));
+			boolean test = Code.op(first) == InstructionSet.CMPZ ? value == 0 : value < 0;
+			int length = SuperInstructions.length(kind);
+			if(kind == SuperInstructions.TEST_NOT_JUMP) {
+				test = !test;
+			}
+			cpu.accumulator = test ? 1 : 0;
+			cpu.programCounter = test ? pc + length : Code.arg(code.getWord(pc + length - 1));
+			break;
+		}
+	}
+
+	private static int arithmetic(int opCode, int left, int right) {
+		switch(opCode) {
+		case InstructionSet.ADD: return left + right;
+		case InstructionSet.SUB: return left - right;
+		default: return left * right;
+		}
+	}
+
+	/**
+	 * @return the number of instructions run() has executed as part of a
+	 * superinstruction since the current program was installed
+	 */
+	public long getFusedInstructionCount() {
+		return fusedInstructions;
+	}
+
+	/**
+	 * The compiled version of run. The compiled code returns to here when it
+	 * halts, reaches maxSteps, throws or the program counter leaves the
+	 * program; in the last case fetching the instruction reports the same
+	 * error the interpreter would.
+	 */
+	private RunResult runCompiled(long maxSteps) {
+		running = true;
+		RunResult.HaltReason reason = RunResult.HaltReason.STEP_LIMIT;
+		RuntimeException error = null;
+		JitCompiler.State state = new JitCompiler.State();
+		state.accumulator = cpu.accumulator;
+		state.programCounter = cpu.programCounter;
+		try {
+			while(true) {
+				compiled.run(memory, state, maxSteps);
+				if(state.halted) {
+					reason = RunResult.HaltReason.HALTED;
+					break;
+				}
+				if(state.steps >= maxSteps) {
+					break;
+				}
+				code.getWord(state.programCounter);
+			}
+		} catch(RuntimeException e) {
+			reason = RunResult.HaltReason.ERROR;
+			error = e;
+		}
+		cpu.accumulator = state.accumulator;
+		cpu.programCounter = state.programCounter;
+		if(reason != RunResult.HaltReason.STEP_LIMIT) {
+			running = false;
+		}
+		return new RunResult(reason, state.steps, cpu.accumulator, cpu.programCounter, error);
+	}
+
+	/**
+	 * Turns the JitCompiler on or off for run(). Only programs that pass the
+	 * Verifier are compiled; anything else, or a program the compiler cannot
+	 * handle, is interpreted.
+	 * @param compiling true to compile programs before running them
+	 */
+	public void setCompiling(boolean compiling) {
+		this.compiling = compiling;
+	}
+
+	public boolean isCompiling() {
+		return compiling;
+	}
+
 	public void clear() {
 		clearMemory();
 		if(code != null) {
 			code.clear();
 		}
+		verified = false;
+		compiledCode = null;
+		if(undo != null) {
+			undo.clear();
+		}
 		//Need this in if statement?
 		cpu.accumulator = 0;
 		cpu.programCounter = 0;
@@ -704,19 +506,153 @@ public class MachineModel extends Observable{
     public int getChangedIndex() {
     	return memory.getChangedIndex();
     }
+    /**
+     * Stops the machine. This used to end the whole program when there was no
+     * GUI; it no longer does, so that many machines can run in one program.
+     */
     public void halt () {
-    	if(withGUI) {
-    		running = false;
-    	} else {
-    		System.exit(0); 
-    	}
+    	running = false;
+    }
+    public boolean isWithGUI() {
+    	return withGUI;
+    }
+    /**
+     * @return the data memory, for the bulk operations copy, fill, snapshot,
+     * restore and equalsRange
+     */
+    public Memory getMemory() {
+    	return memory;
+    }
+    public int getMemorySize() {
+    	return memory.size();
+    }
+    /**
+     * @return the largest number of instructions a program may have
+     */
+    public int getCodeSize() {
+    	return codeSize;
     }
     public void clearMemory() {
     	memory.clear();
     }
 
+	/**
+	 * Installs a loaded program and runs the Verifier over it. A program that
+	 * verifies is executed without the per-instruction level checks; one
+	 * that does not still runs, but through the checked instructions, so
+	 * the errors surface when the bad instruction is reached.
+	 * @param code the program to execute
+	 */
 	public void setCode(Code code) {
 		this.code = code;
+		verificationErrors = Verifier.verify(code);
+		if(code != null && code.getProgramSize() > codeSize) {
+			verificationErrors.put(codeSize, "Error: the program has " + code.getProgramSize()
+					+ " instructions, the code memory holds " + codeSize);
+		}
+		verified = code != null && verificationErrors.isEmpty();
+		compiledCode = null;
+		fusion = verified ? SuperInstructions.analyze(code, memory.size()) : new int[0];
+		fusedInstructions = 0;
+		if(undo != null) {
+			undo.clear();
+		}
+	}
+
+	/**
+	 * Loads an assembled program in one step: the machine is cleared, the
+	 * data image is written to memory and a copy of the code is set, so the
+	 * same Program can be installed again later.
+	 * @param program a program assembled without errors
+	 * @throws ArrayIndexOutOfBoundsException if the program is longer than
+	 * the code memory, as when it is loaded, or a data cell is outside memory
+	 */
+	public void install(Program program) {
+		if(program.getCode().getProgramSize() > codeSize) {
+			throw new ArrayIndexOutOfBoundsException(
+					"The program is longer than the code memory of " + codeSize);
+		}
+		clear();
+		program.writeData(memory);
+		setCode(program.getCode().copy(codeSize));
+	}
+
+	/**
+	 * The state of a machine frozen by snapshot: its registers, memory and
+	 * program, together with what the Verifier and SuperInstructions found
+	 * in the program so that restore does not have to find it again.
+	 */
+	public static final class Snapshot {
+		private final int accumulator;
+		private final int programCounter;
+		private final boolean running;
+		private final Memory.Image memory;
+		private final Code code;
+		private final Map<Integer, String> verificationErrors;
+		private final boolean verified;
+		private final int[] fusion;
+
+		private Snapshot(MachineModel model) {
+			accumulator = model.cpu.accumulator;
+			programCounter = model.cpu.programCounter;
+			running = model.running;
+			memory = model.memory.image();
+			code = model.code == null ? null : model.code.copy(model.codeSize);
+			verificationErrors = Collections.unmodifiableMap(new TreeMap<>(model.verificationErrors));
+			verified = model.verified;
+			fusion = model.fusion;
+		}
+		public int getAccumulator() {
+			return accumulator;
+		}
+		public int getProgramCounter() {
+			return programCounter;
+		}
+		public Memory.Image getMemory() {
+			return memory;
+		}
+	}
+
+	/**
+	 * Freezes the machine, typically right after a program is loaded. The
+	 * memory pages are shared with the snapshot rather than copied (see
+	 * Memory.image), so this is cheap even for a large memory.
+	 * @return the snapshot, which can be restored any number of times
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(this);
+	}
+
+	/**
+	 * Puts the machine back to a snapshot. Memory pages are shared again and
+	 * only copied when the program writes to them, and the program is copied
+	 * without being verified or analyzed again, so resetting a machine for
+	 * the next run costs no file I/O and very little copying.
+	 * @param snapshot a snapshot of a machine with the same memory size
+	 * @throws IllegalArgumentException if the memory sizes differ
+	 */
+	public void restore(Snapshot snapshot) {
+		memory.restore(snapshot.memory);
+		cpu.accumulator = snapshot.accumulator;
+		cpu.programCounter = snapshot.programCounter;
+		running = snapshot.running;
+		code = snapshot.code == null ? null : snapshot.code.copy(codeSize);
+		verificationErrors = new TreeMap<>(snapshot.verificationErrors);
+		verified = snapshot.verified;
+		fusion = snapshot.fusion;
+		fusedInstructions = 0;
+		compiledCode = null;
+		if(undo != null) {
+			undo.clear();
+		}
+	}
+
+	/**
+	 * @return the errors the Verifier found in the current program, keyed by
+	 * program line
+	 */
+	public Map<Integer, String> getVerificationErrors() {
+		return verificationErrors;
 	}
 
 }
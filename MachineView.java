@@ -10,7 +10,6 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Map;
-import java.util.Observable;
 import java.util.Properties;
 import java.util.TreeMap;
 
@@ -21,7 +20,7 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
-public class MachineView extends Observable {
+public class MachineView {
 	private MachineModel model = new MachineModel();
 	private String defaultDir;
 	private String sourceDir;
@@ -36,16 +35,52 @@ public class MachineView extends Observable {
 	private MenuBarBuilder menuBuilder;
 	private JFrame frame;
 	private File currentlyExecutingFile = null; 
+	/**
+	 * The machine right after currentlyExecutingFile was loaded, and the
+	 * time the file was modified then, so reload can skip reading the file
+	 */
+	private MachineModel.Snapshot loaded = null;
+	private long loadedModified;
 	private boolean running = false;
 	private static final int TICK = 500;
 	private boolean autoStepOn = false; 
+	/**
+	 * The steps per tick that means run at full speed on the BackgroundExecutor
+	 */
+	public static final int UNTHROTTLED = 0;
+	private int stepsPerTick = 1;
 	private States state;
+	private BackgroundExecutor executor;
+	private MachineEventBus events;
+	/**
+	 * Records the steps while the program is stepped. It is taken off the
+	 * model during a full speed run so that run keeps the JitCompiler and
+	 * superinstructions; the history starts again when the run ends.
+	 */
+	private final UndoLog undo = new UndoLog();
 
 	public MachineView(MachineModel model) {
+		this(model, true);
+	}
+
+	/**
+	 * @param model the machine
+	 * @param withGUI false to leave out the frame, the panels and the timer,
+	 * so tests can drive the view and listen to its events
+	 */
+	MachineView(MachineModel model, boolean withGUI) {
 		this.model = model;
-		locateDefaultDirectory();
-		loadPropertiesFile();
-		createAndShowGUI();
+		model.setUndoLog(undo);
+		executor = new BackgroundExecutor(model, this);
+		events = new MachineEventBus(model);
+		if(withGUI) {
+			locateDefaultDirectory();
+			loadPropertiesFile();
+			createAndShowGUI();
+		} else {
+			state = States.NOTHING_LOADED;
+			state.enter();
+		}
 	}
 
 	public int getData(int i){
@@ -63,10 +98,31 @@ public class MachineView extends Observable {
 	public int getChangedIndex() {
 		return model.getChangedIndex();
 	} 
+
+	/**
+	 * @param from the first cell to look at
+	 * @return the next cell written since the listeners were last told,
+	 * or -1 if there is none
+	 */
+	public int nextChangedIndex(int from) {
+		return model.getMemory().nextDirty(from);
+	}
+
+	public void addListener(MachineListener listener) {
+		events.addListener(listener);
+	}
 	
 	public Code getCode() {
 		return model.getCode();
 	}
+
+	public int getMemorySize() {
+		return model.getMemorySize();
+	}
+
+	public int getCodeSize() {
+		return model.getCodeSize();
+	}
 	
 	/**
 	 * Translate method reads a source "pasm" file and saves the
@@ -104,6 +160,9 @@ public class MachineView extends Observable {
 				chooser = new JFileChooser(executableDir);
 			}
 			chooser.setFileFilter(filter);
+			// a name ending in .pbin makes the Assembler write the binary format
+			chooser.addChoosableFileFilter(new FileNameExtensionFilter(
+					"Pippin Binary Executable Files", BinaryFormat.EXTENSION));
 			chooser.setSelectedFile(new File(outName));
 			int saveOK = chooser.showSaveDialog(null);
 			if(saveOK == JFileChooser.APPROVE_OPTION) {
@@ -163,7 +222,7 @@ public class MachineView extends Observable {
 	public void loadFile() {
 		JFileChooser chooser = new JFileChooser(executableDir);
 		FileNameExtensionFilter filter = new FileNameExtensionFilter(
-				"Pippin Executable Files", "pexe");
+				"Pippin Executable Files", "pexe", BinaryFormat.EXTENSION);
 		chooser.setFileFilter(filter);
 		// CODE TO LOAD DESIRED FILE
 		int openOK = chooser.showOpenDialog(null);
@@ -189,16 +248,34 @@ public class MachineView extends Observable {
 	}		
 
 	private void finalLoad_ReloadStep() {
-		Code code = new Code();
+		Code code = new Code(model.getCodeSize());
+		loaded = null;
 		try {
 			clearAll();
-			Loader.load(model, code, currentlyExecutingFile);
+			// Loader.load reads nothing when no file has been chosen yet
+			boolean fromFile = currentlyExecutingFile != null && currentlyExecutingFile.exists();
+			loadedModified = fromFile ? currentlyExecutingFile.lastModified() : 0;
+			Map<Integer, String> errors = Loader.load(model, code, currentlyExecutingFile);
+			if(!errors.isEmpty()) {
+				StringBuilder message = new StringBuilder("The program could not be loaded:");
+				for(String error : errors.values()) {
+					message.append('\n').append(error);
+				}
+				JOptionPane.showMessageDialog(
+				frame,
+				message.toString(),
+				"Failure loading data",
+				JOptionPane.WARNING_MESSAGE);
+				return;
+			}
 			model.setCode(code);
 			model.setRunning(true);
+			if(fromFile) {
+				loaded = model.snapshot();
+			}
 			setRunning(true);
 			setAutoStepOn(false);
-			setChanged();
-			notifyObservers("Load Code");
+			events.post(MachineEvent.Kind.CODE_LOADED, MachineEvent.Kind.REGISTERS, MachineEvent.Kind.STATE);
 		} catch (IOException e) {
 			JOptionPane.showMessageDialog(
 			frame,
@@ -242,8 +319,7 @@ public class MachineView extends Observable {
 		state = States.PROGRAM_HALTED;
 		}
 		state.enter();
-		setChanged();
-		notifyObservers();
+		events.post(MachineEvent.Kind.STATE);
 		}
 	
 	public void setAutoStepOn(boolean b) {
@@ -254,8 +330,7 @@ public class MachineView extends Observable {
 		state = States.PROGRAM_LOADED_NOT_AUTOSTEPPING;
 		}
 		state.enter();
-		setChanged();
-		notifyObservers();
+		events.post(MachineEvent.Kind.STATE);
 	}
 	
 	public void halt(){
@@ -263,23 +338,97 @@ public class MachineView extends Observable {
 	}
 	
 	public void clearAll(){
+		executor.cancel();
 		model.clear();
 		state = States.NOTHING_LOADED;
 		state.enter();
-		setChanged();
-		notifyObservers("Clear");
+		events.post(MachineEvent.Kind.CLEARED, MachineEvent.Kind.REGISTERS, MachineEvent.Kind.STATE);
 	}
 	
+	/**
+	 * Starts the program again from the state it was loaded in. Unless the
+	 * file changed since then, the machine is restored from the snapshot
+	 * taken after loading instead of reading the file again.
+	 */
 	public void reload(){
+		if(loaded != null && currentlyExecutingFile.lastModified() == loadedModified) {
+			executor.cancel();
+			model.restore(loaded);
+			setRunning(true);
+			setAutoStepOn(false);
+			events.post(MachineEvent.Kind.CLEARED, MachineEvent.Kind.CODE_LOADED,
+					MachineEvent.Kind.REGISTERS, MachineEvent.Kind.STATE);
+			return;
+		}
 		clearAll();
 		finalLoad_ReloadStep();
 	}
 	
 	
 	public void toggleAutoStep(){
+		if(executor.isActive()) {
+			executor.setPaused(!executor.isPaused());
+			events.post(MachineEvent.Kind.STATE);
+			return;
+		}
+		if(!autoStepOn && stepsPerTick == UNTHROTTLED) {
+			execute();
+			return;
+		}
 		setAutoStepOn(!autoStepOn);
 	}
 
+	public int getStepsPerTick() {
+		return stepsPerTick;
+	}
+
+	/**
+	 * Sets how many instructions auto-stepping runs between two repaints.
+	 * Switching to or from UNTHROTTLED while the program runs moves the run
+	 * between the timer and the BackgroundExecutor.
+	 * @param steps the instructions per tick, or UNTHROTTLED
+	 */
+	public void setStepsPerTick(int steps) {
+		stepsPerTick = steps;
+		if(steps == UNTHROTTLED && autoStepOn) {
+			execute();
+		} else if(steps != UNTHROTTLED && executor.isActive() && !executor.isPaused()) {
+			executor.cancel();
+			setAutoStepOn(true);
+		}
+	}
+
+	/**
+	 * One timer tick of auto-stepping: stepsPerTick instructions, followed
+	 * by a single notification of the observers.
+	 */
+	private void autoStep() {
+		if(stepsPerTick <= 1 || !model.isRunning()) {
+			step();
+			return;
+		}
+		RunResult result;
+		synchronized(model) {
+			result = model.run(stepsPerTick);
+		}
+		if(result.getReason() == RunResult.HaltReason.ERROR) {
+			showRunTimeError(result.getError());
+		}
+		events.post(MachineEvent.Kind.REGISTERS);
+		if(result.getReason() != RunResult.HaltReason.STEP_LIMIT) {
+			halt();
+		}
+	}
+
+	private void showRunTimeError(RuntimeException e) {
+		JOptionPane.showMessageDialog(
+		frame,
+		"Program error from line " + getProgramCounter() + "\n"
+		+ "Exception message: " + e.getMessage(),
+		"Run time error",
+		JOptionPane.OK_OPTION);
+	}
+
 	public void step(){
 		if(model.isRunning()){
 			try{
@@ -326,8 +475,7 @@ public class MachineView extends Observable {
 				"Run time error",
 				JOptionPane.OK_OPTION);
 				}
-			setChanged();
-			notifyObservers();
+			events.post(MachineEvent.Kind.REGISTERS);
 		}
 		else{
 			halt();
@@ -356,60 +504,109 @@ public class MachineView extends Observable {
 		}		
 	}
 
+	/**
+	 * Runs the program at full speed on a BackgroundExecutor. The views are
+	 * refreshed while it runs and Run/Pause and Stop control the run.
+	 */
 	public void execute(){
-		while(running){
-			if(model.isRunning()){
-				try{
-					model.step();
-				}
-				//Potentially wrong, catch blocks copied from pdf, changed only exceptions
-				catch (IllegalArgumentException e) {
-					JOptionPane.showMessageDialog(
-					frame,
-					"Program error from line " + getProgramCounter() + "\n"
-					+ "Exception message: " + e.getMessage(),
-					"Run time error",
-					JOptionPane.OK_OPTION);
-					}
-				catch (ArrayIndexOutOfBoundsException e) {
-					JOptionPane.showMessageDialog(
-					frame,
-					"Program error from line " + getProgramCounter() + "\n"
-					+ "Exception message: " + e.getMessage(),
-					"Run time error",
-					JOptionPane.OK_OPTION);
-					}
-				catch (IndexOutOfBoundsException e) {
-					JOptionPane.showMessageDialog(
-					frame,
-					"Program error from line " + getProgramCounter() + "\n"
-					+ "Exception message: " + e.getMessage(),
-					"Run time error",
-					JOptionPane.OK_OPTION);
-					}
-				catch (NullPointerException e) {
-					JOptionPane.showMessageDialog(
-					frame,
-					"Program error from line " + getProgramCounter() + "\n"
-					+ "Exception message: " + e.getMessage(),
-					"Run time error",
-					JOptionPane.OK_OPTION);
-					}
-				catch (DivideByZeroException e) {
-					JOptionPane.showMessageDialog(
-					frame,
-					"Program error from line " + getProgramCounter() + "\n"
-					+ "Exception message: " + e.getMessage(),
-					"Run time error",
-					JOptionPane.OK_OPTION);
-					}
-			}
-			else{
-				halt();
+		if(!model.isRunning()) {
+			halt();
+			return;
+		}
+		autoStepOn = false;
+		state = States.AUTO_STEPPING;
+		state.enter();
+		model.setUndoLog(null);
+		executor.start();
+		events.post(MachineEvent.Kind.STATE);
+	}
+
+	public boolean isExecuting() {
+		return executor.isActive();
+	}
+
+	/**
+	 * @return true if there are steps to go back over and the program is not
+	 * being run
+	 */
+	public boolean canStepBack() {
+		return state != States.NOTHING_LOADED && state != States.AUTO_STEPPING
+				&& !executor.isActive() && model.getUndoLog() == undo && !undo.isEmpty();
+	}
+
+	/**
+	 * Undoes the last steps of the program, which is left ready to step or
+	 * run again from there.
+	 * @param steps the number of steps to go back
+	 */
+	public void stepBack(int steps) {
+		if(!canStepBack()) {
+			return;
+		}
+		synchronized(model) {
+			model.stepBack(steps);
+		}
+		setRunning(true);
+		events.post(MachineEvent.Kind.REGISTERS);
+	}
+
+	/**
+	 * Asks how many steps to go back and goes back that far.
+	 */
+	public void goBack() {
+		if(!canStepBack()) {
+			return;
+		}
+		int available = undo.size();
+		String answer = JOptionPane.showInputDialog(frame,
+				"How many steps back? (at most " + available + ")", available);
+		if(answer == null) {
+			return;
+		}
+		try {
+			int steps = Integer.parseInt(answer.trim());
+			if(steps > 0) {
+				stepBack(steps);
 			}
+		} catch (NumberFormatException e) {
+			JOptionPane.showMessageDialog(frame, "\"" + answer + "\" is not a number of steps",
+					"Warning", JOptionPane.WARNING_MESSAGE);
+		}
+	}
+
+	/**
+	 * Stops a run started with execute, leaving the program where it got to.
+	 */
+	public void cancelExecution() {
+		executor.cancel();
+	}
+
+	/**
+	 * Called on the EDT by the BackgroundExecutor while the program runs.
+	 */
+	void showProgress() {
+		events.post(MachineEvent.Kind.REGISTERS);
+	}
+
+	/**
+	 * Called on the EDT by the BackgroundExecutor when the run has ended.
+	 * The views are refreshed once more, since the last frame was published
+	 * before the final batch.
+	 * @param result how the last batch ended, or null if the run was cancelled
+	 */
+	void executionEnded(RunResult result) {
+		model.setUndoLog(undo);
+		events.post(MachineEvent.Kind.REGISTERS, MachineEvent.Kind.STATE);
+		if(result != null && result.getReason() == RunResult.HaltReason.ERROR) {
+			showRunTimeError(result.getError());
+		}
+		if(result != null) {
+			halt();
+		} else if(state == States.AUTO_STEPPING && !autoStepOn) {
+			state = States.PROGRAM_LOADED_NOT_AUTOSTEPPING;
+			state.enter();
+			events.post(MachineEvent.Kind.STATE);
 		}
-		setChanged();
-		notifyObservers();
 	}
 	/**
 	 * Method that sets up the whole GUI and locates the individual
@@ -418,9 +615,11 @@ public class MachineView extends Observable {
 	 */
 	private void createAndShowGUI() {
 		codeViewPanel = new CodeViewPanel(this);
-		memoryViewPanel1 = new MemoryViewPanel(this, 0, 160);
-		memoryViewPanel2 = new MemoryViewPanel(this, 160, 240);
-		memoryViewPanel3 = new MemoryViewPanel(this, 240, Memory.DATA_SIZE);
+		// the default 512 cells are split 160/80/272 across the three panels
+		int size = model.getMemorySize();
+		memoryViewPanel1 = new MemoryViewPanel(this, 0, size*5/16);
+		memoryViewPanel2 = new MemoryViewPanel(this, size*5/16, size*15/32);
+		memoryViewPanel3 = new MemoryViewPanel(this, size*15/32, size);
 		controlPanel = new ControlPanel(this);
 		processorPanel = new ProcessorViewPanel(this);
 		menuBuilder = new MenuBarBuilder(this);
@@ -449,9 +648,8 @@ public class MachineView extends Observable {
 		frame.addWindowListener(WindowListenerFactory.windowClosingFactory(e -> exit()));
 		state = States.NOTHING_LOADED;
 		state.enter();
-		setChanged();
-		notifyObservers();
-		javax.swing.Timer timer = new javax.swing.Timer(TICK, e -> {if(autoStepOn) step();});
+		events.post(MachineEvent.Kind.STATE);
+		javax.swing.Timer timer = new javax.swing.Timer(TICK, e -> {if(autoStepOn) autoStep();});
 		timer.start();
 		frame.setVisible(true);
 	}
@@ -0,0 +1,97 @@
+package pippin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MachineViewTester {
+
+	MachineModel model;
+	MachineView view;
+	// the cell at 0 and the accumulator when each event with REGISTERS was delivered
+	List<int[]> registers = new ArrayList<>();
+
+	@Before
+	public void setup() {
+		model = new MachineModel(true);
+		view = new MachineView(model, false);
+		view.addListener(event -> {
+			if(event.has(MachineEvent.Kind.REGISTERS)) {
+				registers.add(new int[] {model.getData(0), model.getAccumulator()});
+			}
+		});
+	}
+
+	private void load(Code code) throws Exception {
+		SwingUtilities.invokeAndWait(() -> {
+			model.setCode(code);
+			model.setRunning(true);
+			view.setRunning(true);
+		});
+		settle();
+		registers.clear();
+	}
+
+	/**
+	 * Waits for the run to end and for the EDT to deliver what it posted.
+	 * The executor stops being active just before it hands executionEnded
+	 * to the EDT, which gives the view its undo log back, so that is what
+	 * is waited for.
+	 */
+	private void settle() throws Exception {
+		boolean[] ended = new boolean[1];
+		for(int i = 0; i < 500 && !ended[0]; i++) {
+			SwingUtilities.invokeAndWait(() -> ended[0] = model.getUndoLog() != null);
+			if(!ended[0]) {
+				Thread.sleep(10);
+			}
+		}
+		assertTrue(ended[0]);
+		assertFalse(view.isExecuting());
+		for(int i = 0; i < 2; i++) {
+			SwingUtilities.invokeAndWait(() -> {});
+		}
+	}
+
+	@Test
+	// Tests that a run too short to publish a frame still refreshes the registers
+	public void testShortRunShowsResult() throws Exception {
+		Code code = new Code();
+		code.setCode(InstructionSet.LOD, 5, 0);
+		code.setCode(InstructionSet.ADD, 1, 0);
+		code.setCode(InstructionSet.HALT, 0, 0);
+		load(code);
+		SwingUtilities.invokeAndWait(view::execute);
+		settle();
+		assertFalse(registers.isEmpty());
+		assertEquals(6, registers.get(registers.size() - 1)[1]);
+		assertEquals(States.PROGRAM_HALTED, view.getState());
+	}
+
+	@Test
+	// Tests that stopping a run refreshes the registers with where it stopped
+	public void testCancelShowsResult() throws Exception {
+		Code code = new Code();
+		code.setCode(InstructionSet.LOD, 0, 1);
+		code.setCode(InstructionSet.ADD, 1, 0);
+		code.setCode(InstructionSet.STO, 0, 1);
+		code.setCode(InstructionSet.JUMP, 0, 0);
+		load(code);
+		SwingUtilities.invokeAndWait(view::execute);
+		Thread.sleep(100);
+		SwingUtilities.invokeAndWait(view::cancelExecution);
+		settle();
+		assertTrue(model.getData(0) > 0);
+		int[] last = registers.get(registers.size() - 1);
+		assertEquals(model.getData(0), last[0]);
+		assertEquals(model.getAccumulator(), last[1]);
+	}
+}
@@ -1,29 +1,558 @@
 package pippin;
 
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * The data memory of a machine. The cells are kept in pages of PAGE_SIZE
+ * that are only allocated when something other than 0 is written to them,
+ * so a machine with a very large address space costs nothing until its
+ * program touches the memory. Untouched cells read as 0.
+ *
+ * Memory also remembers which cells were written since the last call to
+ * clearDirty, as a bitset per page, so that the views (or any other
+ * consumer) only need to look at the cells that changed.
+ *
+ * An Image is a frozen copy of the memory that shares its pages: taking one
+ * and restoring it costs one reference per page, and a page is only copied
+ * when a memory that shares it writes to it.
+ */
 public class Memory {
-	public static int DATA_SIZE = 512;
-	private int[] data = new int[DATA_SIZE];
+	/**
+	 * The default number of cells, used by the no-argument constructor
+	 */
+	public static final int DATA_SIZE = 512;
+	private static final int PAGE_BITS = 10;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	private static final int[] ZERO_PAGE = new int[PAGE_SIZE];
+	private final int size;
+	private int[][] pages;
+	// shared[p] is true while pages[p] belongs to an Image and must be copied before a write
+	private boolean[] shared;
+	private long[][] dirty;
+	private int lowDirtyPage;
+	private int highDirtyPage = -1;
+	private boolean allDirty = false;
 	private int changedIndex = -1;
-	public Memory() {	
-
+	public Memory() {
+		this(DATA_SIZE);
+	}
+	/**
+	 * @param size the number of cells of this memory
+	 */
+	public Memory(int size) {
+		if(size < 0) {
+			throw new IllegalArgumentException("Memory size cannot be negative");
+		}
+		this.size = size;
+		pages = new int[(size + PAGE_MASK) >>> PAGE_BITS][];
+		shared = new boolean[pages.length];
+		dirty = new long[pages.length][];
+		lowDirtyPage = pages.length;
+	}
+	public int size() {
+		return size;
 	}
 	public int getData(int index){
-		return data[index];
+		check(index);
+		int[] page = pages[index >>> PAGE_BITS];
+		return page == null ? 0 : page[index & PAGE_MASK];
 	}
 	public void setData(int index, int value){
-		data[index] = value;
+		check(index);
+		int[] page = pages[index >>> PAGE_BITS];
+		if(page == null) {
+			if(value == 0) {
+				return;
+			}
+			page = allocate(index >>> PAGE_BITS);
+		} else if(shared[index >>> PAGE_BITS]) {
+			page = unshare(index >>> PAGE_BITS);
+		}
+		page[index & PAGE_MASK] = value;
+		int pageNumber = index >>> PAGE_BITS;
+		dirty[pageNumber][(index & PAGE_MASK) >>> 6] |= 1L << index;
+		if(pageNumber < lowDirtyPage) {
+			lowDirtyPage = pageNumber;
+		}
+		if(pageNumber > highDirtyPage) {
+			highDirtyPage = pageNumber;
+		}
+		changedIndex = index;
 	}
+	/**
+	 * @return a copy of all the cells
+	 */
 	int[] getData(){
-		return data;
+		return snapshot(null);
 	}
+	/**
+	 * @return the last cell written to, or -1 if there has been no write
+	 * since the memory was cleared
+	 */
 	public int getChangedIndex(){
 		return changedIndex;
 	}
 	public void clear() {
-		for(int i = 0; i<data.length; i++){
-			data[i] = 0;
+		pages = new int[pages.length][];
+		shared = new boolean[pages.length];
+		dirty = new long[pages.length][];
+		lowDirtyPage = pages.length;
+		highDirtyPage = -1;
+		allDirty = true;
+		changedIndex = -1;
+	}
+	/**
+	 * @return true if every cell has to be treated as changed, which is the
+	 * case after clear or restore
+	 */
+	public boolean isAllDirty() {
+		return allDirty;
+	}
+	/**
+	 * @param index a cell
+	 * @return true if the cell was written since the last clearDirty
+	 */
+	public boolean isDirty(int index) {
+		check(index);
+		long[] bits = dirty[index >>> PAGE_BITS];
+		return allDirty || (bits != null && (bits[(index & PAGE_MASK) >>> 6] & (1L << index)) != 0);
+	}
+	/**
+	 * Finds the changed cells one at a time:
+	 * for(int i = memory.nextDirty(0); i >= 0; i = memory.nextDirty(i + 1))
+	 * @param from the first cell to look at
+	 * @return the first cell at or after from that was written since the last
+	 * clearDirty, or -1 if there is none
+	 */
+	public int nextDirty(int from) {
+		if(from < 0) {
+			from = 0;
+		}
+		if(from >= size) {
+			return -1;
+		}
+		if(allDirty) {
+			return from;
+		}
+		for(int p = Math.max(from >>> PAGE_BITS, lowDirtyPage); p <= highDirtyPage; p++) {
+			long[] bits = dirty[p];
+			if(bits == null) {
+				continue;
+			}
+			int base = p << PAGE_BITS;
+			int word = from > base ? (from - base) >>> 6 : 0;
+			long mask = from > base ? -1L << from : -1L;
+			for(; word < bits.length; word++, mask = -1L) {
+				long found = bits[word] & mask;
+				if(found != 0) {
+					return base + (word << 6) + Long.numberOfTrailingZeros(found);
+				}
+			}
+		}
+		return -1;
+	}
+	/**
+	 * @return the last cell written since the last clearDirty, or -1 if
+	 * there is none
+	 */
+	public int lastDirty() {
+		if(allDirty) {
+			return size - 1;
+		}
+		for(int p = highDirtyPage; p >= lowDirtyPage; p--) {
+			long[] bits = dirty[p];
+			if(bits == null) {
+				continue;
+			}
+			for(int word = bits.length - 1; word >= 0; word--) {
+				if(bits[word] != 0) {
+					return (p << PAGE_BITS) + (word << 6) + 63 - Long.numberOfLeadingZeros(bits[word]);
+				}
+			}
+		}
+		return -1;
+	}
+	/**
+	 * Forgets which cells were written, typically after the views have
+	 * shown the changes.
+	 */
+	public void clearDirty() {
+		for(int p = lowDirtyPage; p <= highDirtyPage; p++) {
+			if(dirty[p] != null) {
+				Arrays.fill(dirty[p], 0L);
+			}
+		}
+		lowDirtyPage = pages.length;
+		highDirtyPage = -1;
+		allDirty = false;
+	}
+	/**
+	 * Marks length cells from start as written. Unallocated pages are
+	 * skipped because their cells are still 0 and so have not changed.
+	 */
+	private void markDirty(int start, int length) {
+		int done = 0;
+		while(done < length) {
+			int index = start + done;
+			int n = chunk(index, length - done);
+			int p = index >>> PAGE_BITS;
+			long[] bits = dirty[p];
+			if(bits != null) {
+				for(int i = index & PAGE_MASK, end = i + n; i < end; ) {
+					if((i & 63) == 0 && end - i >= 64) {
+						bits[i >>> 6] = -1L;
+						i += 64;
+					} else {
+						bits[i >>> 6] |= 1L << i;
+						i++;
+					}
+				}
+				lowDirtyPage = Math.min(lowDirtyPage, p);
+				highDirtyPage = Math.max(highDirtyPage, p);
+			}
+			done += n;
+		}
+		if(length > 0) {
+			changedIndex = start;
+		}
+	}
+	/**
+	 * @return the number of pages that have been allocated
+	 */
+	int allocatedPages() {
+		int count = 0;
+		for(int[] page : pages) {
+			if(page != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+	private void check(int index) {
+		if(index < 0 || index >= size) {
+			throw new ArrayIndexOutOfBoundsException(
+					"Index " + index + " out of bounds for length " + size);
+		}
+	}
+	private void checkRange(int start, int length) {
+		if(start < 0 || length < 0 || start > size - length) {
+			throw new ArrayIndexOutOfBoundsException(
+					"Range " + start + "+" + length + " out of bounds for length " + size);
+		}
+	}
+	private int[] allocate(int pageNumber) {
+		int[] page = new int[Math.min(PAGE_SIZE, size - (pageNumber << PAGE_BITS))];
+		pages[pageNumber] = page;
+		shared[pageNumber] = false;
+		if(dirty[pageNumber] == null) {
+			dirty[pageNumber] = new long[(page.length + 63) >>> 6];
+		}
+		return page;
+	}
+	/**
+	 * Gives this memory its own copy of a page it shares with an Image.
+	 */
+	private int[] unshare(int pageNumber) {
+		int[] page = pages[pageNumber].clone();
+		pages[pageNumber] = page;
+		shared[pageNumber] = false;
+		return page;
+	}
+	/**
+	 * @return the page, copied first if it is shared, or null if it is not allocated
+	 */
+	private int[] writable(int pageNumber) {
+		return shared[pageNumber] ? unshare(pageNumber) : pages[pageNumber];
+	}
+	/**
+	 * The number of cells from index to the end of its page or to limit,
+	 * whichever comes first.
+	 */
+	private static int chunk(int index, int limit) {
+		return Math.min(PAGE_SIZE - (index & PAGE_MASK), limit);
+	}
+	/**
+	 * Copies length cells starting at src to the cells starting at dst. The
+	 * ranges may overlap.
+	 * @param src the first cell to copy from
+	 * @param dst the first cell to copy to
+	 * @param length the number of cells
+	 * @throws ArrayIndexOutOfBoundsException if either range is outside memory
+	 */
+	public void copy(int src, int dst, int length) {
+		checkRange(src, length);
+		checkRange(dst, length);
+		if(dst <= src) {
+			int done = 0;
+			while(done < length) {
+				int n = Math.min(chunk(src + done, length - done), chunk(dst + done, length - done));
+				copyChunk(src + done, dst + done, n);
+				done += n;
+			}
+		} else {
+			int left = length;
+			while(left > 0) {
+				int n = Math.min(Math.min(((src + left - 1) & PAGE_MASK) + 1,
+						((dst + left - 1) & PAGE_MASK) + 1), left);
+				left -= n;
+				copyChunk(src + left, dst + left, n);
+			}
 		}
+		markDirty(dst, length);
+	}
+	private void copyChunk(int src, int dst, int n) {
+		int[] from = pages[src >>> PAGE_BITS];
+		int[] to = writable(dst >>> PAGE_BITS);
+		if(from == null) {
+			if(to != null) {
+				Arrays.fill(to, dst & PAGE_MASK, (dst & PAGE_MASK) + n, 0);
+			}
+			return;
+		}
+		if(to == null) {
+			to = allocate(dst >>> PAGE_BITS);
+		}
+		System.arraycopy(from, src & PAGE_MASK, to, dst & PAGE_MASK, n);
+	}
+	/**
+	 * Stores the remaining values of a buffer in consecutive cells, one bulk
+	 * get per page.
+	 * @param start the cell that receives the first value
+	 * @param values the values, read up to their limit
+	 * @throws ArrayIndexOutOfBoundsException if the range is outside memory
+	 */
+	public void write(int start, IntBuffer values) {
+		int length = values.remaining();
+		checkRange(start, length);
+		int done = 0;
+		while(done < length) {
+			int index = start + done;
+			int n = chunk(index, length - done);
+			int[] page = writable(index >>> PAGE_BITS);
+			if(page == null) {
+				page = allocate(index >>> PAGE_BITS);
+			}
+			values.get(page, index & PAGE_MASK, n);
+			done += n;
+		}
+		markDirty(start, length);
+	}
+	/**
+	 * Sets length cells starting at start to value.
+	 * @param start the first cell
+	 * @param length the number of cells
+	 * @param value the value to store
+	 * @throws ArrayIndexOutOfBoundsException if the range is outside memory
+	 */
+	public void fill(int start, int length, int value) {
+		checkRange(start, length);
+		int done = 0;
+		while(done < length) {
+			int index = start + done;
+			int n = chunk(index, length - done);
+			int[] page = writable(index >>> PAGE_BITS);
+			if(page == null && value != 0) {
+				page = allocate(index >>> PAGE_BITS);
+			}
+			if(page != null) {
+				Arrays.fill(page, index & PAGE_MASK, (index & PAGE_MASK) + n, value);
+			}
+			done += n;
+		}
+		markDirty(start, length);
+	}
+	/**
+	 * Copies the whole memory into buffer, which is reused when it has the
+	 * right size so that repeated snapshots do not allocate.
+	 * @param buffer the array to copy into, or null to allocate one
+	 * @return the array holding the copy
+	 */
+	public int[] snapshot(int[] buffer) {
+		if(buffer == null || buffer.length != size) {
+			buffer = new int[size];
+		}
+		for(int p = 0; p < pages.length; p++) {
+			int base = p << PAGE_BITS;
+			int n = Math.min(PAGE_SIZE, size - base);
+			if(pages[p] == null) {
+				Arrays.fill(buffer, base, base + n, 0);
+			} else {
+				System.arraycopy(pages[p], 0, buffer, base, n);
+			}
+		}
+		return buffer;
+	}
+	/**
+	 * Puts back the contents of a snapshot. Pages that are still unallocated
+	 * stay that way if the snapshot only has zeros for them.
+	 * @param snapshot an array filled by snapshot
+	 * @throws IllegalArgumentException if the snapshot is not the size of memory
+	 */
+	public void restore(int[] snapshot) {
+		if(snapshot.length != size) {
+			throw new IllegalArgumentException("Snapshot has " + snapshot.length
+					+ " cells, memory has " + size);
+		}
+		for(int p = 0; p < pages.length; p++) {
+			int base = p << PAGE_BITS;
+			int n = Math.min(PAGE_SIZE, size - base);
+			if(pages[p] == null) {
+				if(Arrays.mismatch(snapshot, base, base + n, ZERO_PAGE, 0, n) < 0) {
+					continue;
+				}
+				allocate(p);
+			}
+			System.arraycopy(snapshot, base, writable(p), 0, n);
+		}
+		allDirty = true;
+	}
+	/**
+	 * A frozen copy of a memory, made by image and put back by
+	 * restore(Image). Its pages are never written.
+	 */
+	public static final class Image {
+		private final int size;
+		private final int[][] pages;
+
+		private Image(int size, int[][] pages) {
+			this.size = size;
+			this.pages = pages;
+		}
+		public int size() {
+			return size;
+		}
+		public int getData(int index) {
+			if(index < 0 || index >= size) {
+				throw new ArrayIndexOutOfBoundsException(
+						"Index " + index + " out of bounds for length " + size);
+			}
+			int[] page = pages[index >>> PAGE_BITS];
+			return page == null ? 0 : page[index & PAGE_MASK];
+		}
+		/**
+		 * @return the number of pages, allocated or not
+		 */
+		int pageCount() {
+			return pages.length;
+		}
+		/**
+		 * @param p a page number
+		 * @return the cells of the page, which must not be written, or null
+		 * if all its cells are 0
+		 */
+		int[] page(int p) {
+			return pages[p];
+		}
+		/**
+		 * @param p a page number
+		 * @return the address of the first cell of the page
+		 */
+		static int pageStart(int p) {
+			return p << PAGE_BITS;
+		}
+	}
+	/**
+	 * Freezes the current contents. No cells are copied: the pages are
+	 * shared with the Image and copied by this memory on its next write.
+	 * @return the image of this memory
+	 */
+	public Image image() {
+		for(int p = 0; p < pages.length; p++) {
+			shared[p] = pages[p] != null;
+		}
+		return new Image(size, pages.clone());
+	}
+	/**
+	 * Puts back the contents of an Image by sharing its pages, so it costs
+	 * one reference per page however many cells are in use. Every cell
+	 * counts as changed afterwards, as after clear.
+	 * @param image an image of a memory of the same size
+	 * @throws IllegalArgumentException if the image is not the size of memory
+	 */
+	public void restore(Image image) {
+		if(image.size != size) {
+			throw new IllegalArgumentException("Image has " + image.size
+					+ " cells, memory has " + size);
+		}
+		pages = image.pages.clone();
+		for(int p = 0; p < pages.length; p++) {
+			shared[p] = pages[p] != null;
+			if(shared[p] && dirty[p] == null) {
+				dirty[p] = new long[(pages[p].length + 63) >>> 6];
+			}
+		}
+		allDirty = true;
 		changedIndex = -1;
 	}
+	/**
+	 * Compares length cells of memory starting at start with the values in
+	 * other starting at otherStart.
+	 * @param start the first cell of memory
+	 * @param other the values to compare with
+	 * @param otherStart the first value of other
+	 * @param length the number of cells
+	 * @return true if all the cells are equal
+	 * @throws ArrayIndexOutOfBoundsException if either range is out of bounds
+	 */
+	public boolean equalsRange(int start, int[] other, int otherStart, int length) {
+		checkRange(start, length);
+		if(otherStart < 0 || otherStart > other.length - length) {
+			throw new ArrayIndexOutOfBoundsException("Range " + otherStart + "+" + length
+					+ " out of bounds for length " + other.length);
+		}
+		int done = 0;
+		while(done < length) {
+			int index = start + done;
+			int n = chunk(index, length - done);
+			int[] page = pages[index >>> PAGE_BITS];
+			int from = index & PAGE_MASK;
+			if(page == null) {
+				page = ZERO_PAGE;
+			}
+			if(Arrays.mismatch(page, from, from + n, other, otherStart + done, otherStart + done + n) >= 0) {
+				return false;
+			}
+			done += n;
+		}
+		return true;
+	}
+	/**
+	 * Rotates the length cells starting at start by shift places towards
+	 * higher addresses, wrapping around at the end of the range. Three
+	 * reversals do it in place in one pass.
+	 * @param start the first cell of the range
+	 * @param length the number of cells
+	 * @param shift the number of places, between 0 and length
+	 * @throws ArrayIndexOutOfBoundsException if the range is outside memory
+	 */
+	public void rotate(int start, int length, int shift) {
+		checkRange(start, length);
+		int end = start + length - 1;
+		if(shift == 0 || shift == length) {
+			return;
+		}
+		reverse(start, end);
+		reverse(start, start + shift - 1);
+		reverse(start + shift, end);
+		markDirty(start, length);
+	}
+	private void reverse(int from, int to) {
+		int[] page = writable(from >>> PAGE_BITS);
+		if(page != null && (from >>> PAGE_BITS) == (to >>> PAGE_BITS)) {
+			// the common case of a range inside one page works on the array
+			for(int i = from & PAGE_MASK, j = to & PAGE_MASK; i < j; i++, j--) {
+				int temp = page[i];
+				page[i] = page[j];
+				page[j] = temp;
+			}
+			return;
+		}
+		while(from < to) {
+			int temp = getData(from);
+			setData(from++, getData(to));
+			setData(to--, temp);
+		}
+	}
 }
-
@@ -0,0 +1,94 @@
+package pippin;
+
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * The rows lower to upper - 1 of data memory as a table of address, decimal
+ * value and hex value. The values are read from the machine when a row is
+ * painted, so a JTable over this model only touches the visible rows.
+ */
+public class MemoryTableModel extends AbstractTableModel {
+	private static final long serialVersionUID = 1L;
+	private static final String[] COLUMNS = {"Address", "Decimal", "Hex"};
+	private MachineView machineView;
+	private int lower;
+	private int upper;
+	private boolean blank = true;
+	private int highlighted = -1;
+
+	public MemoryTableModel(MachineView machineView, int lower, int upper) {
+		this.machineView = machineView;
+		this.lower = lower;
+		this.upper = upper;
+	}
+	@Override
+	public int getRowCount() {
+		return upper - lower;
+	}
+	@Override
+	public int getColumnCount() {
+		return COLUMNS.length;
+	}
+	@Override
+	public String getColumnName(int column) {
+		return COLUMNS[column];
+	}
+	@Override
+	public Object getValueAt(int row, int column) {
+		int address = lower + row;
+		if(column == 0) {
+			return address + ":";
+		}
+		if(blank) {
+			return "";
+		}
+		int value = machineView.getData(address);
+		return column == 1 ? "" + value : Integer.toHexString(value);
+	}
+	/**
+	 * @param address a memory cell
+	 * @return the row showing the cell or -1 if it is not in this table
+	 */
+	public int rowOf(int address) {
+		return address >= lower && address < upper ? address - lower : -1;
+	}
+	/**
+	 * Tells the table the value of one cell changed.
+	 * @param address the memory cell that changed
+	 */
+	public void cellChanged(int address) {
+		int row = rowOf(address);
+		if(row >= 0) {
+			fireTableCellUpdated(row, 1);
+			fireTableCellUpdated(row, 2);
+		}
+	}
+	/**
+	 * Shows or hides all the values, e.g. after Clear.
+	 * @param blank true to show empty cells
+	 */
+	public void setBlank(boolean blank) {
+		this.blank = blank;
+		fireTableRowsUpdated(0, getRowCount() - 1);
+	}
+	public int getHighlighted() {
+		return highlighted;
+	}
+	/**
+	 * Moves the highlight to the row of a memory cell.
+	 * @param address the memory cell to highlight or -1 for none
+	 */
+	public void setHighlighted(int address) {
+		int row = rowOf(address);
+		if(row != highlighted) {
+			int old = highlighted;
+			highlighted = row;
+			if(old >= 0) {
+				fireTableRowsUpdated(old, old);
+			}
+			if(row >= 0) {
+				fireTableRowsUpdated(row, row);
+			}
+		}
+	}
+}
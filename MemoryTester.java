@@ -0,0 +1,150 @@
+package pippin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MemoryTester {
+
+	Memory memory = new Memory();
+	int[] dataCopy = new int[Memory.DATA_SIZE];
+
+	@Before
+	public void setup() {
+		for (int i = 0; i < Memory.DATA_SIZE; i++) {
+			dataCopy[i] = 3*i + 1;
+			memory.setData(i, 3*i + 1);
+		}
+	}
+	@Test
+	// Tests copying to higher addresses over an overlapping range
+	public void testCopyOverlapping() {
+		memory.copy(10, 15, 20);
+		System.arraycopy(dataCopy, 10, dataCopy, 15, 20);
+		assertArrayEquals(dataCopy, memory.getData());
+	}
+	@Test (expected=ArrayIndexOutOfBoundsException.class)
+	// Tests that a copy past the end of memory fails
+	public void testCopyOutOfRange() {
+		memory.copy(0, Memory.DATA_SIZE - 5, 10);
+	}
+	@Test
+	public void testFill() {
+		memory.fill(100, 50, -7);
+		for(int i = 100; i < 150; i++) {
+			dataCopy[i] = -7;
+		}
+		assertArrayEquals(dataCopy, memory.getData());
+	}
+	@Test
+	// Tests that a snapshot reuses its buffer and restore puts the values back
+	public void testSnapshotRestore() {
+		int[] buffer = memory.snapshot(null);
+		assertArrayEquals(dataCopy, buffer);
+		memory.clear();
+		assertSame(buffer, memory.snapshot(buffer));
+		assertEquals(0, buffer[20]);
+		memory.restore(dataCopy);
+		assertArrayEquals(dataCopy, memory.getData());
+	}
+	@Test
+	public void testEqualsRange() {
+		assertTrue(memory.equalsRange(30, dataCopy, 30, 40));
+		memory.setData(69, 0);
+		assertFalse(memory.equalsRange(30, dataCopy, 30, 40));
+		assertTrue(memory.equalsRange(30, dataCopy, 30, 39));
+	}
+	@Test
+	// Tests that pages are only allocated when a non-zero value is written
+	public void testLargeMemoryIsLazy() {
+		Memory large = new Memory(1_000_000);
+		assertEquals(0, large.allocatedPages());
+		large.setData(500_000, 0);
+		assertEquals(0, large.getData(999_999));
+		assertEquals(0, large.allocatedPages());
+		large.setData(999_999, 5);
+		assertEquals(5, large.getData(999_999));
+		assertEquals(1, large.allocatedPages());
+	}
+	@Test (expected=ArrayIndexOutOfBoundsException.class)
+	// Tests that the cell after the last one cannot be read
+	public void testPastEnd() {
+		new Memory(1000).getData(1000);
+	}
+	@Test
+	// Tests an overlapping copy that crosses page boundaries
+	public void testCopyAcrossPages() {
+		Memory large = new Memory(5000);
+		int[] expected = new int[5000];
+		for(int i = 0; i < 5000; i++) {
+			large.setData(i, i);
+			expected[i] = i;
+		}
+		large.copy(100, 1500, 2000);
+		System.arraycopy(expected, 100, expected, 1500, 2000);
+		assertArrayEquals(expected, large.getData());
+		large.copy(1500, 900, 3000);
+		System.arraycopy(expected, 1500, expected, 900, 3000);
+		assertArrayEquals(expected, large.getData());
+	}
+	@Test
+	// Tests that only the written cells are reported, in order, until clearDirty
+	public void testDirty() {
+		Memory large = new Memory(5000);
+		large.clearDirty();
+		assertEquals(-1, large.nextDirty(0));
+		large.setData(3000, 7);
+		large.setData(12, 1);
+		large.setData(63, 1);
+		large.setData(64, 1);
+		assertEquals(12, large.nextDirty(0));
+		assertEquals(63, large.nextDirty(13));
+		assertEquals(64, large.nextDirty(64));
+		assertEquals(3000, large.nextDirty(65));
+		assertEquals(-1, large.nextDirty(3001));
+		assertEquals(3000, large.lastDirty());
+		assertTrue(large.isDirty(63));
+		assertFalse(large.isDirty(62));
+		assertEquals(64, large.getChangedIndex());
+		large.clearDirty();
+		assertEquals(-1, large.nextDirty(0));
+		large.fill(2990, 100, 4);
+		assertEquals(2990, large.nextDirty(0));
+		assertEquals(3089, large.nextDirty(3089));
+		assertEquals(-1, large.nextDirty(3090));
+		assertEquals(3089, large.lastDirty());
+		large.clear();
+		assertTrue(large.isAllDirty());
+		assertEquals(100, large.nextDirty(100));
+		large.clearDirty();
+		assertFalse(large.isAllDirty());
+		assertEquals(-1, large.nextDirty(0));
+	}
+	@Test
+	// Tests that an image keeps its cells while the memory and a second memory
+	// restored from it are written
+	public void testImage() {
+		Memory.Image image = memory.image();
+		memory.setData(7, -1);
+		memory.fill(0, 3, 9);
+		assertEquals(3*7 + 1, image.getData(7));
+		Memory other = new Memory();
+		other.restore(image);
+		assertTrue(other.isAllDirty());
+		assertArrayEquals(dataCopy, other.getData());
+		other.copy(0, 10, 20);
+		assertEquals(3*10 + 1, image.getData(10));
+		memory.restore(image);
+		assertArrayEquals(dataCopy, memory.getData());
+		assertEquals(1, image.getData(0));
+	}
+	@Test (expected=IllegalArgumentException.class)
+	public void testImageWrongSize() {
+		new Memory(100).restore(memory.image());
+	}
+}
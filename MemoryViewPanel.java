@@ -2,71 +2,53 @@ package pippin;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
-import java.awt.GridLayout;
-import java.awt.Rectangle;
-import java.util.Observable;
-import java.util.Observer;
+import java.awt.Component;
 
 import javax.swing.BorderFactory;
 import javax.swing.JComponent;
-import javax.swing.JLabel;
 import javax.swing.JPanel;
-import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
-import javax.swing.JTextField;
+import javax.swing.JTable;
 import javax.swing.border.Border;
 import javax.swing.border.TitledBorder;
+import javax.swing.table.DefaultTableCellRenderer;
 
-public class MemoryViewPanel implements Observer {
+public class MemoryViewPanel implements MachineListener {
 	private MachineView machineView;
-	private JScrollPane scroller;
-	private JTextField[] dataDecimal = new JTextField[Memory.DATA_SIZE];
-	private JTextField[] dataHex = new JTextField[Memory.DATA_SIZE];
+	private MemoryTableModel tableModel;
+	private JTable table;
 	private int lower;
 	private int upper;
-	private int previousColor = -1;
 	public MemoryViewPanel(MachineView machineView, int lower, int upper) {
 		this.machineView = machineView;
 		this.lower = lower;
 		this.upper = upper;
-		machineView.addObserver(this);
+		tableModel = new MemoryTableModel(machineView, lower, upper);
+		machineView.addListener(this);
 	}
 	@Override
-	public void update(Observable arg0, Object arg1) {
-		for(int i = lower; i < upper; i++) {
-			dataDecimal[i].setText("" + machineView.getData(i));
-			dataHex[i].setText(Integer.toHexString(machineView.getData(i)));
+	public void machineChanged(MachineEvent event) {
+		if(event.has(MachineEvent.Kind.CLEARED) && !event.has(MachineEvent.Kind.CODE_LOADED)) {
+			tableModel.setBlank(true);
+			tableModel.setHighlighted(-1);
+			return;
 		}
-		if(arg1 != null && arg1.equals("Clear")) {
-			for(int i = lower; i < upper; i++) {
-				dataDecimal[i].setText("");
-				dataHex[i].setText("");
-			}			
-			if(lower <= previousColor && previousColor < upper) {
-				System.out.println("\tagain" + previousColor);
-				dataDecimal[previousColor].setBackground(Color.WHITE);
-				dataHex[previousColor].setBackground(Color.WHITE);
-				previousColor = -1;
+		if(event.has(MachineEvent.Kind.CODE_LOADED) || (event.isAllMemory() && event.touches(lower, upper))) {
+			tableModel.setBlank(false);
+		} else if(event.touches(lower, upper)) {
+			// only the cells written since the last event have to be redrawn
+			for(int i = machineView.nextChangedIndex(Math.max(lower, event.getFirstCell())); 
+					i >= 0 && i < upper && i <= event.getLastCell(); 
+					i = machineView.nextChangedIndex(i + 1)) {
+				tableModel.cellChanged(i);
 			}
 		} else {
-			if(previousColor  >= lower && previousColor < upper) {
-				dataDecimal[previousColor].setBackground(Color.WHITE);
-				dataHex[previousColor].setBackground(Color.WHITE);
-			}
-			previousColor = machineView.getChangedIndex();
-			if(previousColor  >= lower && previousColor < upper) {
-				dataDecimal[previousColor].setBackground(Color.YELLOW);
-				dataHex[previousColor].setBackground(Color.YELLOW);
-			} 
+			return;
 		}
-		if(scroller != null && machineView != null) {
-			JScrollBar bar= scroller.getVerticalScrollBar();
-			if (machineView.getChangedIndex() >= lower &&
-					machineView.getChangedIndex() < upper && 
-					dataDecimal[machineView.getChangedIndex()] != null) {
-				Rectangle bounds = dataDecimal[machineView.getChangedIndex()].getBounds();
-				bar.setValue(Math.max(0, bounds.y - 15*bounds.height));
-			}
+		tableModel.setHighlighted(machineView.getChangedIndex());
+		int row = tableModel.getHighlighted();
+		if(table != null && row >= 0) {
+			table.scrollRectToVisible(table.getCellRect(row, 0, true));
 		}
 	}
 	public JComponent createMemoryDisplay() {
@@ -77,26 +59,23 @@ public class MemoryViewPanel implements Observer {
 				"Data Memory View [" + lower + "-" + upper + "]",
 				TitledBorder.CENTER, TitledBorder.DEFAULT_POSITION);
 		returnPanel.setBorder(border);
-		JPanel panel = new JPanel();
-		panel.setLayout(new BorderLayout());
-		JPanel numPanel = new JPanel();
-		JPanel decimalPanel = new JPanel();
-		JPanel hexPanel = new JPanel();
-		numPanel.setLayout(new GridLayout(0,1));
-		decimalPanel.setLayout(new GridLayout(0,1));
-		hexPanel.setLayout(new GridLayout(0,1));
-		panel.add(numPanel, BorderLayout.LINE_START);
-		panel.add(decimalPanel, BorderLayout.CENTER);
-		panel.add(hexPanel, BorderLayout.LINE_END);
-		for(int i = lower; i < upper; i++) {
-			numPanel.add(new JLabel(i+": ", JLabel.RIGHT));
-			dataDecimal[i] = new JTextField(10);
-			dataHex[i] = new JTextField(10);
-			decimalPanel.add(dataDecimal[i]);
-			hexPanel.add(dataHex[i]);
-		}
-		scroller = new JScrollPane(panel);
-		returnPanel.add(scroller);
+		table = new JTable(tableModel);
+		table.setFillsViewportHeight(true);
+		table.getTableHeader().setReorderingAllowed(false);
+		table.setDefaultRenderer(Object.class, new DefaultTableCellRenderer() {
+			private static final long serialVersionUID = 1L;
+			@Override
+			public Component getTableCellRendererComponent(JTable table, Object value,
+					boolean isSelected, boolean hasFocus, int row, int column) {
+				super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+				setHorizontalAlignment(column == 0 ? RIGHT : LEFT);
+				if(!isSelected) {
+					setBackground(row == tableModel.getHighlighted() ? Color.YELLOW : Color.WHITE);
+				}
+				return this;
+			}
+		});
+		returnPanel.add(new JScrollPane(table));
 		return returnPanel;
 	}
 
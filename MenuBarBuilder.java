@@ -1,23 +1,22 @@
 package pippin;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
-import java.util.Observable;
-import java.util.Observer;
 
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
 import javax.swing.KeyStroke;
 
-public class MenuBarBuilder implements Observer {
+public class MenuBarBuilder implements MachineListener {
 	private JMenuItem assemble = new JMenuItem("Assemble Source...");
 	private JMenuItem load = new JMenuItem("Load Program...");
 	private JMenuItem exit = new JMenuItem("Exit");
 	private JMenuItem go = new JMenuItem("Go");
+	private JMenuItem back = new JMenuItem("Go Back...");
 	private MachineView machineView;
 	
 	public MenuBarBuilder(MachineView machineView) {
 		this.machineView = machineView;
-		machineView.addObserver(this);
+		machineView.addListener(this);
 	}
 	
 	public JMenu createFileMenu() {
@@ -51,11 +50,22 @@ public class MenuBarBuilder implements Observer {
 				KeyEvent.VK_G, ActionEvent.CTRL_MASK));
 		go.addActionListener(e -> machineView.execute());
 		menu.add(go);
+		back.setMnemonic(KeyEvent.VK_B);
+		back.setAccelerator(KeyStroke.getKeyStroke(
+				KeyEvent.VK_B, ActionEvent.CTRL_MASK));
+		back.addActionListener(e -> machineView.goBack());
+		menu.add(back);
 		return menu;
 	}
 
 	@Override
-	public void update(Observable arg0, Object arg1) {
+	public void machineChanged(MachineEvent event) {
+		if(event.has(MachineEvent.Kind.REGISTERS) || event.has(MachineEvent.Kind.STATE)) {
+			back.setEnabled(machineView.canStepBack());
+		}
+		if(!event.has(MachineEvent.Kind.STATE)) {
+			return;
+		}
 		assemble.setEnabled(machineView.getState().getAssembleFileActive());
 		load.setEnabled(machineView.getState().getLoadFileActive());
 		go.setEnabled(machineView.getState().getStepActive());
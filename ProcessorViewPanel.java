@@ -1,21 +1,19 @@
 package pippin;
 
 import java.awt.GridLayout;
-import java.util.Observable;
-import java.util.Observer;
 
 import javax.swing.JComponent;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
 
-public class ProcessorViewPanel implements Observer {
+public class ProcessorViewPanel implements MachineListener {
 	private MachineView machineView;
 	private JTextField acc = new JTextField();
 	private JTextField pc = new JTextField();
 	public ProcessorViewPanel(MachineView machineView){
 		this.machineView = machineView;
-		machineView.addObserver(this);
+		machineView.addListener(this);
 	}
 	public JComponent createProcessorDisplay() {
 		JPanel returnPanel = new JPanel();
@@ -28,8 +26,8 @@ public class ProcessorViewPanel implements Observer {
 	}
 
 	@Override
-	public void update(Observable arg0, Object arg1) {
-		if(machineView != null) {
+	public void machineChanged(MachineEvent event) {
+		if(machineView != null && event.has(MachineEvent.Kind.REGISTERS)) {
 			acc.setText("" + machineView.getAccumulator());
 			pc.setText("" + machineView.getProgramCounter());
 		}
@@ -0,0 +1,128 @@
+package pippin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * An assembled program held in memory: its Code and a sparse image of its
+ * data, the cells in the order the source sets them. The assemble methods
+ * run the Assembler straight into a Program, so a source can be run with
+ * MachineModel.install without writing and then loading a pexe file.
+ */
+public class Program implements ProgramSink {
+	private final Code code = new Code(Integer.MAX_VALUE);
+	private int[] addresses = new int[16];
+	private int[] values = new int[16];
+	private int dataCount = 0;
+
+	/**
+	 * Assembles a source file. The errors map has the same contract as in
+	 * Assembler.assemble(File, File, Map).
+	 * @param source the pasm file
+	 * @param errors the errors map
+	 * @return the program, complete only if errors is empty
+	 */
+	public static Program assemble(File source, Map<Integer, String> errors) {
+		try(Reader input = new InputStreamReader(new FileInputStream(source), StandardCharsets.ISO_8859_1)) {
+			return assemble(input, errors);
+		} catch (FileNotFoundException e) {
+			errors.put(0, "Error: Unable to open the input file");
+		} catch (IOException e) {
+			errors.put(0, "Error: Unable to read the input file");
+		}
+		return new Program();
+	}
+
+	/**
+	 * Assembles the text of a source.
+	 * @param source the lines of a pasm program
+	 * @param errors the errors map, keyed by line number
+	 * @return the program, complete only if errors is empty
+	 */
+	public static Program assemble(String source, Map<Integer, String> errors) {
+		try {
+			return assemble(new StringReader(source), errors);
+		} catch (IOException e) {
+			// a StringReader does not fail
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Assembles a source read from a Reader, which is not closed.
+	 * @param source the pasm text
+	 * @param errors the errors map, keyed by line number
+	 * @return the program, complete only if errors is empty
+	 * @throws IOException if the reader fails
+	 */
+	public static Program assemble(Reader source, Map<Integer, String> errors) throws IOException {
+		Program program = new Program();
+		Assembler.assemble(source, program, errors);
+		return program;
+	}
+
+	@Override
+	public void instruction(int op, int arg, int level) {
+		code.setCode(op, arg, level);
+	}
+
+	@Override
+	public void data(int address, int value) {
+		if(dataCount == addresses.length) {
+			addresses = Arrays.copyOf(addresses, 2 * dataCount);
+			values = Arrays.copyOf(values, 2 * dataCount);
+		}
+		addresses[dataCount] = address;
+		values[dataCount++] = value;
+	}
+
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * @return the instructions; install copies them, so the program can be
+	 * installed again after the machine is cleared
+	 */
+	public Code getCode() {
+		return code;
+	}
+
+	public int getDataCount() {
+		return dataCount;
+	}
+
+	public int getAddress(int i) {
+		return addresses[i];
+	}
+
+	public int getValue(int i) {
+		return values[i];
+	}
+
+	/**
+	 * Stores the data image in memory, one bulk write per run of
+	 * consecutive cells.
+	 * @param memory the memory of a machine
+	 * @throws ArrayIndexOutOfBoundsException if a cell is outside memory
+	 */
+	void writeData(Memory memory) {
+		for(int i = 0; i < dataCount; ) {
+			int end = i + 1;
+			while(end < dataCount && addresses[end] == addresses[end - 1] + 1) {
+				end++;
+			}
+			memory.write(addresses[i], IntBuffer.wrap(values, i, end - i));
+			i = end;
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package pippin;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives an assembled program as the Assembler produces it: first all the
+ * instructions in order, then the data cells. Closing the sink finishes the
+ * output.
+ */
+public interface ProgramSink extends Closeable {
+	/**
+	 * @param op the opcode
+	 * @param arg the argument
+	 * @param level the indirection level
+	 * @throws IOException if the output cannot be written
+	 */
+	void instruction(int op, int arg, int level) throws IOException;
+
+	/**
+	 * @param address the memory cell
+	 * @param value the value of the cell
+	 * @throws IOException if the output cannot be written
+	 */
+	void data(int address, int value) throws IOException;
+}
@@ -0,0 +1,51 @@
+package pippin;
+
+/**
+ * Times ROT for several window sizes, moving each window by three quarters
+ * of its length. The one-place-at-a-time rotation that ROT used to do is
+ * kept here as the baseline.
+ */
+public class RotBenchmark {
+	private static final int[] LENGTHS = {10, 50, 200, 500};
+	private static final int REPEATS = 20_000;
+
+	private static int oneAtATime(int[] data, int start, int length, int move, int accumulator) {
+		while(move>0){
+			accumulator = data[start+length-1];
+			for(int index = start+length-1; index>start; index--){
+				data[index] = data[index-1];
+			}
+			data[start] = accumulator;
+			move--;
+		}
+		return accumulator;
+	}
+
+	public static void main(String[] args) {
+		int[] data = new int[Memory.DATA_SIZE];
+		Memory memory = new Memory();
+		for(int round = 1; round <= 3; round++) {
+			System.out.println("round " + round);
+			for(int length : LENGTHS) {
+				int start = 4;
+				int move = 3 * length / 4;
+				memory.setData(0, start);
+				memory.setData(1, length);
+				memory.setData(2, move);
+				int acc = 0;
+				long begin = System.nanoTime();
+				for(int i = 0; i < REPEATS; i++) {
+					acc += oneAtATime(data, start, length, move, acc);
+				}
+				long old = System.nanoTime() - begin;
+				begin = System.nanoTime();
+				for(int i = 0; i < REPEATS; i++) {
+					acc += MachineModel.rotate(memory, 0, acc);
+				}
+				long now = System.nanoTime() - begin;
+				System.out.printf("length %4d move %4d: one at a time %9.1f ns, in place %7.1f ns (%d)%n",
+						length, move, (double)old / REPEATS, (double)now / REPEATS, acc & 1);
+			}
+		}
+	}
+}
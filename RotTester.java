@@ -1,6 +1,7 @@
 package pippin;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -50,4 +51,32 @@ public class RotTester {
     	dataCopy[10] = 9;
     	assertArrayEquals(dataCopy,machine.getData());
     }
+    @Test
+    // Tests that a move larger than the length wraps around and that
+    // the accumulator holds the new first value
+    public void testROTlargeMove() {
+    	machine.setData(2, 23);
+    	Instruction instr = machine.get(0x14);
+    	instr.execute(0, 1);
+    	for(int i = 10; i<20; i++){
+    		dataCopy[i] = (i-13+10)%10;
+    	}
+    	dataCopy[2] = 23;
+    	assertArrayEquals(dataCopy,machine.getData());
+    	assertEquals(7, machine.getAccumulator());
+    }
+    @Test
+    // Tests the rotation to lower addresses with a negative move and that
+    // the accumulator holds the new last value
+    public void testROTnegative() {
+    	machine.setData(2, -2);
+    	Instruction instr = machine.get(0x14);
+    	instr.execute(0, 1);
+    	for(int i = 10; i<20; i++){
+    		dataCopy[i] = (i-8)%10;
+    	}
+    	dataCopy[2] = -2;
+    	assertArrayEquals(dataCopy,machine.getData());
+    	assertEquals(1, machine.getAccumulator());
+    }
 }
@@ -0,0 +1,66 @@
+package pippin;
+
+/**
+ * The outcome of a headless MachineModel.run: why the run stopped, how many
+ * instructions were executed and the registers at the end of the run.
+ */
+public class RunResult {
+	public enum HaltReason {
+		/** the program executed HALT */
+		HALTED,
+		/** the step limit was reached before the program halted */
+		STEP_LIMIT,
+		/** an instruction threw an exception, see getError */
+		ERROR
+	}
+	private final HaltReason reason;
+	private final long steps;
+	private final int accumulator;
+	private final int programCounter;
+	private final RuntimeException error;
+
+	public RunResult(HaltReason reason, long steps, int accumulator, int programCounter,
+			RuntimeException error) {
+		this.reason = reason;
+		this.steps = steps;
+		this.accumulator = accumulator;
+		this.programCounter = programCounter;
+		this.error = error;
+	}
+	public HaltReason getReason() {
+		return reason;
+	}
+	/**
+	 * @return the number of instructions executed, counting the HALT but not
+	 * an instruction that threw an exception
+	 */
+	public long getSteps() {
+		return steps;
+	}
+	public int getAccumulator() {
+		return accumulator;
+	}
+	/**
+	 * @return the program counter at the end of the run. After an error it is
+	 * the line of the instruction that failed.
+	 */
+	public int getProgramCounter() {
+		return programCounter;
+	}
+	/**
+	 * @return the exception that stopped the run or null if there was none
+	 */
+	public RuntimeException getError() {
+		return error;
+	}
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(reason).append(" after ").append(steps).append(" steps, acc = ")
+			.append(accumulator).append(", pc = ").append(programCounter);
+		if(error != null) {
+			builder.append(", error: ").append(error);
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,168 @@
+package pippin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Checks the RunResult of MachineModel.run against the same program
+ * executed with step().
+ */
+public class RunTester {
+
+	// counts the cell at 0 down to zero and halts, 15 steps from 3
+	private static MachineModel countDown() {
+		Code code = new Code();
+		code.setCode(InstructionSet.LOD, 0, 1);  // 0: LOD [0
+		code.setCode(InstructionSet.SUB, 1, 0);  // 1: SUB 1
+		code.setCode(InstructionSet.STO, 0, 1);  // 2: STO [0
+		code.setCode(InstructionSet.JMPZ, 5, 0); // 3: JMPZ 5
+		code.setCode(InstructionSet.JUMP, 0, 0); // 4: JUMP 0
+		code.setCode(InstructionSet.HALT, 0, 0); // 5: HALT
+		return machine(code);
+	}
+
+	// counts the cell at 0 down, dividing 12 by each value, so the 19th
+	// step divides by zero
+	private static MachineModel divide() {
+		Code code = new Code();
+		code.setCode(InstructionSet.LOD, 0, 1);  // 0: LOD [0
+		code.setCode(InstructionSet.SUB, 1, 0);  // 1: SUB 1
+		code.setCode(InstructionSet.STO, 0, 1);  // 2: STO [0
+		code.setCode(InstructionSet.LOD, 12, 0); // 3: LOD 12
+		code.setCode(InstructionSet.DIV, 0, 1);  // 4: DIV [0
+		code.setCode(InstructionSet.STO, 1, 1);  // 5: STO [1
+		code.setCode(InstructionSet.JUMP, 0, 0); // 6: JUMP 0
+		return machine(code);
+	}
+
+	private static MachineModel machine(Code code) {
+		MachineModel model = new MachineModel();
+		model.setCode(code);
+		model.setData(0, 3);
+		model.setRunning(true);
+		return model;
+	}
+
+	/**
+	 * Checks that a run ended where stepping the same program as many steps ends.
+	 */
+	private static void assertSameAsSteps(MachineModel run, MachineModel stepped, RunResult result) {
+		for(long i = 0; i < result.getSteps(); i++) {
+			stepped.step();
+		}
+		assertEquals(stepped.getAccumulator(), result.getAccumulator());
+		assertEquals(stepped.getProgramCounter(), result.getProgramCounter());
+		assertEquals(stepped.getData(0), run.getData(0));
+		assertEquals(stepped.getData(1), run.getData(1));
+	}
+
+	@Test
+	// Tests that a run stops at its step limit and can be continued
+	public void testStepLimit() {
+		MachineModel model = countDown();
+		RunResult result = model.run(0);
+		assertEquals(RunResult.HaltReason.STEP_LIMIT, result.getReason());
+		assertEquals(0, result.getSteps());
+		assertEquals(0, result.getProgramCounter());
+
+		result = model.run(7);
+		assertEquals(RunResult.HaltReason.STEP_LIMIT, result.getReason());
+		assertEquals(7, result.getSteps());
+		assertNull(result.getError());
+		assertTrue(model.isRunning());
+		assertEquals(2, result.getProgramCounter());
+		assertEquals(model.getAccumulator(), result.getAccumulator());
+		assertSameAsSteps(model, countDown(), result);
+
+		result = model.run(1000);
+		assertEquals(RunResult.HaltReason.HALTED, result.getReason());
+		assertEquals(15 - 7, result.getSteps());
+	}
+
+	@Test
+	// Tests that HALT ends the run, counted as a step, and leaves the
+	// machine stopped the way step() does
+	public void testHalted() {
+		MachineModel model = countDown();
+		RunResult result = model.run(1000);
+		assertEquals(RunResult.HaltReason.HALTED, result.getReason());
+		assertEquals(15, result.getSteps());
+		assertEquals(5, result.getProgramCounter());
+		assertEquals(0, model.getData(0));
+		assertFalse(model.isRunning());
+
+		MachineModel stepped = countDown();
+		for(int i = 0; i < 15; i++) {
+			assertTrue(stepped.isRunning());
+			stepped.step();
+		}
+		assertFalse(stepped.isRunning());
+		assertEquals(stepped.getProgramCounter(), result.getProgramCounter());
+		assertEquals(stepped.getAccumulator(), result.getAccumulator());
+	}
+
+	@Test
+	// Tests a step limit that falls exactly on the HALT and just before it
+	public void testExactLimit() {
+		RunResult result = countDown().run(15);
+		assertEquals(RunResult.HaltReason.HALTED, result.getReason());
+		assertEquals(15, result.getSteps());
+
+		MachineModel model = countDown();
+		result = model.run(14);
+		assertEquals(RunResult.HaltReason.STEP_LIMIT, result.getReason());
+		assertEquals(14, result.getSteps());
+		assertEquals(5, result.getProgramCounter());
+		assertTrue(model.isRunning());
+		result = model.run(1);
+		assertEquals(RunResult.HaltReason.HALTED, result.getReason());
+		assertEquals(1, result.getSteps());
+	}
+
+	@Test
+	// Tests that a failing instruction ends the run with its exception, not
+	// counted as a step, where step() throws the same exception
+	public void testError() {
+		MachineModel model = divide();
+		RunResult result = model.run(1000);
+		assertEquals(RunResult.HaltReason.ERROR, result.getReason());
+		assertTrue(result.getError() instanceof DivideByZeroException);
+		assertEquals(18, result.getSteps());
+		assertEquals(4, result.getProgramCounter());
+		assertEquals(12, result.getAccumulator());
+		assertEquals(12, model.getData(1));
+		assertFalse(model.isRunning());
+
+		MachineModel stepped = divide();
+		assertSameAsSteps(model, stepped, result);
+		try {
+			stepped.step();
+			fail("the DIV should fail");
+		} catch(DivideByZeroException e) {
+			assertEquals(result.getError().getMessage(), e.getMessage());
+		}
+		assertFalse(stepped.isRunning());
+		assertEquals(result.getProgramCounter(), stepped.getProgramCounter());
+		assertEquals(result.getAccumulator(), stepped.getAccumulator());
+	}
+
+	@Test
+	// Tests a run that stops at its limit just before the failing
+	// instruction and then fails on the next run
+	public void testLimitBeforeError() {
+		MachineModel model = divide();
+		RunResult result = model.run(18);
+		assertEquals(RunResult.HaltReason.STEP_LIMIT, result.getReason());
+		assertEquals(4, result.getProgramCounter());
+		assertTrue(model.isRunning());
+		result = model.run(1);
+		assertEquals(RunResult.HaltReason.ERROR, result.getReason());
+		assertEquals(0, result.getSteps());
+		assertEquals(4, result.getProgramCounter());
+	}
+}
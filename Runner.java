@@ -1,45 +1,96 @@
 package pippin;
 
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs pexe, pbin or pasm files without the GUI and prints how each run
+ * ended. A pasm source is assembled in memory and installed directly.
+ * Usage: Runner [-steps n] [-memory cells] [-code instructions]
+ *     [-every n] [-seconds t] [-resume] file.pexe ...
+ * The step limit defaults to 100,000,000 instructions per program and the
+ * memory and code sizes to those of the GUI machine.
+ *
+ * With -every or -seconds a Checkpointer saves each run to the file name
+ * of the program with ".ckpt" added, every n steps or t seconds and when
+ * the step limit is reached. With -resume a program that has such a file
+ * carries on from it, so a long run that was stopped, or ran out of steps,
+ * continues where it was. The file is deleted when the program halts.
+ */
 public class Runner {
-public static void main(String[] args) throws FileNotFoundException {
-MachineModel model = new MachineModel();
-Code program1 = new Code();
-Loader.load(model, program1, new File("test1.pexe"));
-System.out.println("program1");
-int pc = 0;
-while(pc < 3) {
-System.out.println(program1.getCodeText(pc));
-int op = program1.getOp(pc);
-int arg = program1.getArg(pc);
-int lev = program1.getIndirectionLevel(pc);
-Instruction instr = model.INSTRUCTION_MAP.get(op);
-instr.execute(arg, lev);
-pc = model.getProgramCounter();
-System.out.println("memory[0] = " + model.getData(0));
-System.out.println("memory[1] = " + model.getData(1));
-System.out.println("memory[2] = " + model.getData(2));
-}
-System.out.println("======================");
-System.out.println("program2");
-pc = 0;
-model.clearMemory();
-model.setAccumulator(0);
-model.setProgramCounter(0);
-Code program2 = new Code();
-Loader.load(model, program2, new File("test2.pexe"));
-while (true){
-pc = model.getProgramCounter();
-System.out.println(program2.getCodeText(pc));
-int op = program2.getOp(pc);
-int arg = program2.getArg(pc);
-int lev = program2.getIndirectionLevel(pc);
-Instruction instr = model.INSTRUCTION_MAP.get(op);
-instr.execute(arg, lev);
-System.out.println("memory[0] = " + model.getData(0));
-System.out.println("memory[1] = " + model.getData(1));
-System.out.println("acc = " + model.getAccumulator());
-}
+	public static void main(String[] args) throws IOException {
+		long maxSteps = 100_000_000L;
+		int dataSize = Memory.DATA_SIZE;
+		int codeSize = Code.CODE_MAX;
+		long everySteps = 0;
+		double everySeconds = 0;
+		boolean resume = false;
+		int first = 0;
+		while(first < args.length && args[first].startsWith("-")) {
+			switch(args[first]) {
+			case "-steps": maxSteps = Long.parseLong(args[++first]); break;
+			case "-memory": dataSize = Integer.parseInt(args[++first]); break;
+			case "-code": codeSize = Integer.parseInt(args[++first]); break;
+			case "-every": everySteps = Long.parseLong(args[++first]); break;
+			case "-seconds": everySeconds = Double.parseDouble(args[++first]); break;
+			case "-resume": resume = true; break;
+			default: throw new IllegalArgumentException("Unknown option " + args[first]);
+			}
+			first++;
+		}
+		boolean checkpointing = everySteps > 0 || everySeconds > 0 || resume;
+		MachineModel model = new MachineModel(false, dataSize, codeSize);
+		for(int i = first; i < args.length; i++) {
+			File file = new File(args[i]);
+			model.clear();
+			Map<Integer, String> errors;
+			if(file.getName().endsWith(".pasm")) {
+				errors = new TreeMap<>();
+				Program program = Program.assemble(file, errors);
+				if(errors.isEmpty()) {
+					try {
+						model.install(program);
+					} catch (ArrayIndexOutOfBoundsException e) {
+						errors.put(0, "Error: " + e.getMessage());
+					}
+				}
+			} else {
+				Code code = new Code(model.getCodeSize());
+				errors = Loader.load(model, code, file);
+				model.setCode(code);
+			}
+			if(!errors.isEmpty()) {
+				System.out.println(file.getName() + ": not loaded");
+				for(String error : errors.values()) {
+					System.out.println("  " + error);
+				}
+				continue;
+			}
+			if(!checkpointing) {
+				System.out.println(file.getName() + ": " + model.run(maxSteps));
+				continue;
+			}
+			File checkpoint = new File(file.getPath() + ".ckpt");
+			long stepsDone = 0;
+			if(resume && checkpoint.exists()) {
+				try {
+					stepsDone = Checkpointer.resume(model, checkpoint);
+					System.out.println(file.getName() + ": resumed after " + stepsDone + " steps");
+				} catch (IOException e) {
+					System.out.println(file.getName() + ": not resumed, " + e.getMessage());
+					continue;
+				}
+			}
+			RunResult result;
+			try(Checkpointer checkpointer = new Checkpointer(checkpoint, everySteps, everySeconds)) {
+				result = checkpointer.run(model, stepsDone, maxSteps);
+			}
+			if(result.getReason() == RunResult.HaltReason.HALTED) {
+				checkpoint.delete();
+			}
+			System.out.println(file.getName() + ": " + result);
+		}
+	}
 }
-}
\ No newline at end of file
@@ -0,0 +1,233 @@
+package pippin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs many programs at once, for regression suites. Each Job is an
+ * assembled Program with optional extra data, and the jobs run as tasks on a
+ * work-stealing ForkJoinPool. Machines are taken from a pool and reused, and
+ * each job gets a cleared machine through MachineModel.install.
+ * Usage: SimulationFarm [-threads n] [-steps n] [-repeat n] [-compile] file.pasm ...
+ */
+public class SimulationFarm {
+	/**
+	 * A program to run, with the cells to set before it starts and the cells
+	 * to report after it ends.
+	 */
+	public static class Job {
+		private final String name;
+		private final Program program;
+		private final long maxSteps;
+		private final List<Integer> dataStarts = new ArrayList<>();
+		private final List<int[]> dataValues = new ArrayList<>();
+		private int watchStart = 0;
+		private int watchLength = 0;
+
+		public Job(String name, Program program, long maxSteps) {
+			this.name = name;
+			this.program = program;
+			this.maxSteps = maxSteps;
+		}
+		public String getName() {
+			return name;
+		}
+		/**
+		 * Sets cells after the data of the program is installed.
+		 * @param start the first cell
+		 * @param values the values of start, start + 1...
+		 * @return this job
+		 */
+		public Job setData(int start, int... values) {
+			dataStarts.add(start);
+			dataValues.add(values.clone());
+			return this;
+		}
+		/**
+		 * Asks for a copy of some cells at the end of the run.
+		 * @param start the first cell
+		 * @param length the number of cells
+		 * @return this job
+		 */
+		public Job watch(int start, int length) {
+			watchStart = start;
+			watchLength = length;
+			return this;
+		}
+	}
+
+	/**
+	 * The outcome of one job
+	 */
+	public static class JobResult {
+		private final Job job;
+		private final RunResult result;
+		private final long nanos;
+		private final int[] watched;
+
+		public JobResult(Job job, RunResult result, long nanos, int[] watched) {
+			this.job = job;
+			this.result = result;
+			this.nanos = nanos;
+			this.watched = watched;
+		}
+		public Job getJob() {
+			return job;
+		}
+		public RunResult getResult() {
+			return result;
+		}
+		/**
+		 * @return the time of the run itself, not counting the install
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+		/**
+		 * @return the cells asked for with Job.watch
+		 */
+		public int[] getWatched() {
+			return watched;
+		}
+		@Override
+		public String toString() {
+			return job.getName() + ": " + result + String.format(" in %.3f ms", nanos / 1e6);
+		}
+	}
+
+	private final int threads;
+	private final int dataSize;
+	private final int codeSize;
+	private final ConcurrentLinkedQueue<MachineModel> machines = new ConcurrentLinkedQueue<>();
+	private boolean compiling = false;
+
+	/**
+	 * @param threads the parallelism of the pool
+	 * @param dataSize the memory size of the machines
+	 * @param codeSize the code size of the machines
+	 */
+	public SimulationFarm(int threads, int dataSize, int codeSize) {
+		this.threads = threads;
+		this.dataSize = dataSize;
+		this.codeSize = codeSize;
+	}
+
+	/**
+	 * @param compiling true to run the jobs with the JitCompiler
+	 */
+	public void setCompiling(boolean compiling) {
+		this.compiling = compiling;
+	}
+
+	/**
+	 * Runs the jobs and waits for all of them.
+	 * @param jobs the jobs
+	 * @return a result per job, in the order of jobs
+	 */
+	public List<JobResult> run(List<Job> jobs) {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			List<Callable<JobResult>> tasks = new ArrayList<>();
+			for(Job job : jobs) {
+				tasks.add(() -> runJob(job));
+			}
+			List<JobResult> results = new ArrayList<>();
+			for(Future<JobResult> future : pool.invokeAll(tasks)) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while running jobs", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("A job failed", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private JobResult runJob(Job job) {
+		MachineModel model = machines.poll();
+		if(model == null) {
+			model = new MachineModel(false, dataSize, codeSize);
+		}
+		try {
+			model.setCompiling(compiling);
+			try {
+				model.install(job.program);
+				for(int i = 0; i < job.dataStarts.size(); i++) {
+					int start = job.dataStarts.get(i);
+					int[] values = job.dataValues.get(i);
+					for(int j = 0; j < values.length; j++) {
+						model.setData(start + j, values[j]);
+					}
+				}
+			} catch (ArrayIndexOutOfBoundsException e) {
+				return new JobResult(job, new RunResult(RunResult.HaltReason.ERROR, 0, 0, 0, e), 0, new int[0]);
+			}
+			long begin = System.nanoTime();
+			RunResult result = model.run(job.maxSteps);
+			long nanos = System.nanoTime() - begin;
+			int[] watched = new int[job.watchLength];
+			for(int i = 0; i < watched.length; i++) {
+				watched[i] = model.getData(job.watchStart + i);
+			}
+			return new JobResult(job, result, nanos, watched);
+		} finally {
+			machines.offer(model);
+		}
+	}
+
+	public static void main(String[] args) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		long maxSteps = 100_000_000L;
+		int repeat = 1;
+		boolean compile = false;
+		int first = 0;
+		while(first < args.length && args[first].startsWith("-")) {
+			switch(args[first]) {
+			case "-threads": threads = Integer.parseInt(args[++first]); break;
+			case "-steps": maxSteps = Long.parseLong(args[++first]); break;
+			case "-repeat": repeat = Integer.parseInt(args[++first]); break;
+			case "-compile": compile = true; break;
+			default: throw new IllegalArgumentException("Unknown option " + args[first]);
+			}
+			first++;
+		}
+		List<Job> jobs = new ArrayList<>();
+		for(int i = first; i < args.length; i++) {
+			Map<Integer, String> errors = new TreeMap<>();
+			Program program = Program.assemble(new File(args[i]), errors);
+			if(!errors.isEmpty()) {
+				System.out.println(args[i] + ": not assembled");
+				for(String error : errors.values()) {
+					System.out.println("  " + error);
+				}
+				continue;
+			}
+			for(int r = 0; r < repeat; r++) {
+				jobs.add(new Job(args[i] + (repeat > 1 ? "#" + r : ""), program, maxSteps));
+			}
+		}
+		SimulationFarm farm = new SimulationFarm(threads, Memory.DATA_SIZE, Code.CODE_MAX);
+		farm.setCompiling(compile);
+		long begin = System.nanoTime();
+		List<JobResult> results = farm.run(jobs);
+		long time = System.nanoTime() - begin;
+		long steps = 0;
+		for(JobResult result : results) {
+			System.out.println(result);
+			steps += result.getResult().getSteps();
+		}
+		System.out.printf("%d jobs, %d instructions in %.1f ms on %d threads%n",
+				results.size(), steps, time / 1e6, threads);
+	}
+}
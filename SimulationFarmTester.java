@@ -0,0 +1,36 @@
+package pippin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class SimulationFarmTester {
+
+	@Test
+	// Tests that jobs on shared machines do not see each other's data
+	public void testJobs() {
+		Map<Integer, String> errors = new TreeMap<>();
+		Program program = Program.assemble("LOD [1\nADD [2\nSTO [3\nHALT\nDATA\n1 5\n", errors);
+		assertTrue(errors.isEmpty());
+		List<SimulationFarm.Job> jobs = new ArrayList<>();
+		for(int i = 0; i < 20; i++) {
+			jobs.add(new SimulationFarm.Job("job" + i, program, 100).setData(2, i).watch(1, 3));
+		}
+		jobs.add(new SimulationFarm.Job("outside", program, 100).setData(1000, 1));
+		SimulationFarm farm = new SimulationFarm(4, Memory.DATA_SIZE, Code.CODE_MAX);
+		List<SimulationFarm.JobResult> results = farm.run(jobs);
+		assertEquals(21, results.size());
+		for(int i = 0; i < 20; i++) {
+			assertEquals(RunResult.HaltReason.HALTED, results.get(i).getResult().getReason());
+			assertArrayEquals(new int[] {5, i, 5 + i}, results.get(i).getWatched());
+		}
+		assertEquals(RunResult.HaltReason.ERROR, results.get(20).getResult().getReason());
+	}
+}
@@ -0,0 +1,116 @@
+package pippin;
+
+/**
+ * Finds the common instruction sequences of a verified program that the
+ * interpreter can execute as one superinstruction. Only sequences inside a
+ * basic block are fused and only when none of their instructions can throw:
+ * every operand is immediate or a direct address inside memory, and the
+ * JMPZ target was checked by the Verifier. A fused sequence therefore has
+ * exactly the effect of its instructions run one at a time.
+ *
+ * The fused sequences are
+ * <ul>
+ * <li>LOAD_OP: LOD x / ADD|SUB|MUL y</li>
+ * <li>LOAD_OP_STORE: LOD x / ADD|SUB|MUL y / STO [z, e.g. LOD [x / ADD 1 / STO [x</li>
+ * <li>TEST_JUMP: CMPZ|CMPL [x / JMPZ n</li>
+ * <li>TEST_NOT_JUMP: CMPZ|CMPL [x / NOT / JMPZ n</li>
+ * </ul>
+ */
+public class SuperInstructions {
+	public static final int NONE = 0;
+	public static final int LOAD_OP = 1;
+	public static final int LOAD_OP_STORE = 2;
+	public static final int TEST_JUMP = 3;
+	public static final int TEST_NOT_JUMP = 4;
+
+	private static final int[] LENGTH = {1, 2, 3, 2, 3};
+
+	/**
+	 * @param kind one of the superinstruction kinds
+	 * @return the number of instructions the superinstruction replaces
+	 */
+	public static int length(int kind) {
+		return LENGTH[kind];
+	}
+
+	/**
+	 * Builds the fusion table of a program.
+	 * @param code a program that passed the Verifier
+	 * @param memorySize the number of data memory cells
+	 * @return for every program line the superinstruction starting there or NONE
+	 */
+	public static int[] analyze(Code code, int memorySize) {
+		int size = code.getProgramSize();
+		boolean[] leader = new boolean[size + 1];
+		leader[0] = true;
+		for(int i = 0; i < size; i++) {
+			long word = code.getWord(i);
+			int op = Code.op(word);
+			if(op == InstructionSet.JUMP || op == InstructionSet.JMPZ || op == InstructionSet.HALT) {
+				leader[i + 1] = true;
+			}
+			// HALT has an argument too, but it is not a jump target
+			int target = Code.arg(word);
+			if((op == InstructionSet.JUMP || op == InstructionSet.JMPZ) && Code.level(word) == 0 && target >= 0 && target <= size) {
+				leader[target] = true;
+			}
+		}
+		int[] table = new int[size];
+		for(int i = 0; i < size; i++) {
+			int kind = match(code, i, size, memorySize);
+			for(int j = 1; j < LENGTH[kind]; j++) {
+				if(leader[i + j]) {
+					kind = NONE;
+				}
+			}
+			table[i] = kind;
+		}
+		return table;
+	}
+
+	private static int match(Code code, int i, int size, int memorySize) {
+		long first = code.getWord(i);
+		int op = Code.op(first);
+		if(op == InstructionSet.LOD && safeValue(first, memorySize) && i + 1 < size) {
+			long second = code.getWord(i + 1);
+			if(!isArithmetic(Code.op(second)) || !safeValue(second, memorySize)) {
+				return NONE;
+			}
+			if(i + 2 < size) {
+				long third = code.getWord(i + 2);
+				if(Code.op(third) == InstructionSet.STO && Code.level(third) == 1
+						&& inMemory(Code.arg(third), memorySize)) {
+					return LOAD_OP_STORE;
+				}
+			}
+			return LOAD_OP;
+		}
+		if((op == InstructionSet.CMPZ || op == InstructionSet.CMPL) && inMemory(Code.arg(first), memorySize) && i + 1 < size) {
+			long second = code.getWord(i + 1);
+			if(isJumpIfZero(second)) {
+				return TEST_JUMP;
+			}
+			if(Code.op(second) == InstructionSet.NOT && i + 2 < size && isJumpIfZero(code.getWord(i + 2))) {
+				return TEST_NOT_JUMP;
+			}
+		}
+		return NONE;
+	}
+
+	private static boolean isArithmetic(int op) {
+		return op == InstructionSet.ADD || op == InstructionSet.SUB || op == InstructionSet.MUL;
+	}
+
+	private static boolean isJumpIfZero(long word) {
+		return Code.op(word) == InstructionSet.JMPZ && Code.level(word) == 0;
+	}
+
+	private static boolean safeValue(long word, int memorySize) {
+		int level = Code.level(word);
+		return level == 0 || (level == 1 && inMemory(Code.arg(word), memorySize));
+	}
+
+	private static boolean inMemory(int address, int memorySize) {
+		return address >= 0 && address < memorySize;
+	}
+}
@@ -0,0 +1,183 @@
+package pippin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+/**
+ * Checks that run() with superinstructions ends every run exactly where
+ * stepping one instruction at a time does.
+ */
+public class SuperInstructionsTester {
+
+	private static final int CELLS = 16;
+
+	/**
+	 * Runs code with run(maxSteps) on one machine and with up to maxSteps
+	 * calls of step() on another, and checks that they end the same.
+	 * @return the result of run
+	 */
+	private static RunResult compare(Code code, int[] data, long maxSteps) {
+		MachineModel fused = machine(code, data);
+		MachineModel stepped = machine(code, data);
+		RunResult result = fused.run(maxSteps);
+		long steps = 0;
+		RuntimeException error = null;
+		try {
+			while(steps < maxSteps && stepped.isRunning()) {
+				stepped.step();
+				steps++;
+			}
+		} catch(RuntimeException e) {
+			error = e;
+		}
+		String at = "limit " + maxSteps;
+		assertEquals(at, steps, result.getSteps());
+		assertEquals(at, stepped.getAccumulator(), result.getAccumulator());
+		assertEquals(at, stepped.getProgramCounter(), result.getProgramCounter());
+		assertArrayEquals(cells(stepped), cells(fused));
+		if(error != null) {
+			assertEquals(at, RunResult.HaltReason.ERROR, result.getReason());
+			assertEquals(at, error.getClass(), result.getError().getClass());
+		} else if(!stepped.isRunning()) {
+			assertEquals(at, RunResult.HaltReason.HALTED, result.getReason());
+		} else {
+			assertEquals(at, RunResult.HaltReason.STEP_LIMIT, result.getReason());
+		}
+		return result;
+	}
+
+	private static MachineModel machine(Code code, int[] data) {
+		MachineModel model = new MachineModel();
+		model.setCode(code);
+		assertEquals(0, model.getVerificationErrors().size());
+		for(int i = 0; i < data.length; i++) {
+			model.setData(i, data[i]);
+		}
+		model.setRunning(true);
+		return model;
+	}
+
+	private static int[] cells(MachineModel model) {
+		int[] cells = new int[CELLS];
+		for(int i = 0; i < CELLS; i++) {
+			cells[i] = model.getData(i);
+		}
+		return cells;
+	}
+
+	/**
+	 * Compares a run at every step limit up to the end of the program.
+	 */
+	private static void compareAll(Code code, int[] data) {
+		long total = compare(code, data, 1000).getSteps();
+		for(int max = 0; max <= total; max++) {
+			compare(code, data, max);
+		}
+	}
+
+	// counts the cell at 0 down to zero, adding each new value to the cell at 1,
+	// with one of each superinstruction
+	private static Code loop() {
+		Code code = new Code();
+		code.setCode(InstructionSet.LOD, 0, 1);   //  0: LOD [0     LOAD_OP_STORE
+		code.setCode(InstructionSet.SUB, 1, 0);   //  1: SUB 1
+		code.setCode(InstructionSet.STO, 0, 1);   //  2: STO [0
+		code.setCode(InstructionSet.LOD, 1, 1);   //  3: LOD [1     LOAD_OP
+		code.setCode(InstructionSet.ADD, 0, 1);   //  4: ADD [0
+		code.setCode(InstructionSet.STO, 3, 2);   //  5: STO [[3    through the cell at 3, which holds 1
+		code.setCode(InstructionSet.CMPZ, 0, 1);  //  6: CMPZ [0    TEST_JUMP
+		code.setCode(InstructionSet.JMPZ, 0, 0);  //  7: JMPZ 0
+		code.setCode(InstructionSet.CMPL, 0, 1);  //  8: CMPL [0    TEST_NOT_JUMP
+		code.setCode(InstructionSet.NOT, 0, 0);   //  9: NOT
+		code.setCode(InstructionSet.JMPZ, 12, 0); // 10: JMPZ 12
+		code.setCode(InstructionSet.HALT, 0, 0);  // 11: HALT
+		code.setCode(InstructionSet.HALT, 0, 0);  // 12: HALT
+		return code;
+	}
+
+	@Test
+	// Tests that each kind of superinstruction is found where it starts
+	public void testAnalyze() {
+		int[] table = SuperInstructions.analyze(loop(), Memory.DATA_SIZE);
+		int n = SuperInstructions.NONE;
+		assertArrayEquals(new int[] {SuperInstructions.LOAD_OP_STORE, n, n,
+				SuperInstructions.LOAD_OP, n, n, SuperInstructions.TEST_JUMP, n,
+				SuperInstructions.TEST_NOT_JUMP, n, n, n, n}, table);
+	}
+
+	@Test
+	// Tests that a fused run ends like stepping at every step limit, so each
+	// kind stops exactly at the limit even in the middle of a sequence
+	public void testStepLimit() {
+		compareAll(loop(), new int[] {5, 0, 0, 1});
+	}
+
+	@Test
+	// Tests that a whole run executes the sequences fused
+	public void testFusedCount() {
+		MachineModel model = machine(loop(), new int[] {5, 0, 0, 1});
+		RunResult result = model.run(1000);
+		assertEquals(RunResult.HaltReason.HALTED, result.getReason());
+		assertEquals(5 * 8 + 3 + 1, result.getSteps());
+		assertEquals(4 + 3 + 2 + 1, model.getData(1));
+		// five times LOAD_OP_STORE, LOAD_OP and TEST_JUMP, then TEST_NOT_JUMP
+		assertEquals(5 * (3 + 2 + 2) + 3, model.getFusedInstructionCount());
+		// a limit that cuts every sequence short leaves nothing fused
+		model = machine(loop(), new int[] {5, 0, 0, 1});
+		model.run(1);
+		assertEquals(0, model.getFusedInstructionCount());
+	}
+
+	@Test
+	// Tests that a sequence with a jump target inside it is not fused, so
+	// the jump lands on its own instruction
+	public void testJumpIntoSequence() {
+		Code code = new Code();
+		code.setCode(InstructionSet.JUMP, 2, 0);   // 0: JUMP 2
+		code.setCode(InstructionSet.LOD, 0, 1);    // 1: LOD [0
+		code.setCode(InstructionSet.ADD, 1, 0);    // 2: ADD 1
+		code.setCode(InstructionSet.STO, 0, 1);    // 3: STO [0
+		code.setCode(InstructionSet.CMPZ, 0, 1);   // 4: CMPZ [0
+		code.setCode(InstructionSet.JMPZ, 7, 0);   // 5: JMPZ 7
+		code.setCode(InstructionSet.JUMP, 5, 0);   // 6: JUMP 5, into the TEST_JUMP
+		code.setCode(InstructionSet.HALT, 0, 0);   // 7: HALT
+		int[] table = SuperInstructions.analyze(code, Memory.DATA_SIZE);
+		for(int kind : table) {
+			assertEquals(SuperInstructions.NONE, kind);
+		}
+		compareAll(code, new int[] {7});
+	}
+
+	@Test
+	// Tests that an instruction that can fail is not fused, and the run
+	// stops on it with the same error and step count as stepping
+	public void testError() {
+		int outside = Memory.DATA_SIZE + 5;
+		Code code = new Code();
+		code.setCode(InstructionSet.LOD, 1, 0);        // 0: LOD 1     LOAD_OP
+		code.setCode(InstructionSet.ADD, 1, 0);        // 1: ADD 1
+		code.setCode(InstructionSet.LOD, outside, 1);  // 2: LOD [outside memory
+		code.setCode(InstructionSet.ADD, 1, 0);        // 3: ADD 1
+		code.setCode(InstructionSet.STO, 0, 1);        // 4: STO [0
+		code.setCode(InstructionSet.CMPZ, outside, 1); // 5: CMPZ [outside memory
+		code.setCode(InstructionSet.JMPZ, 7, 0);       // 6: JMPZ 7
+		code.setCode(InstructionSet.HALT, 0, 0);       // 7: HALT
+		int[] table = SuperInstructions.analyze(code, Memory.DATA_SIZE);
+		assertEquals(SuperInstructions.LOAD_OP, table[0]);
+		assertEquals(SuperInstructions.NONE, table[2]);
+		assertEquals(SuperInstructions.NONE, table[5]);
+		RunResult result = compare(code, new int[0], 100);
+		assertEquals(RunResult.HaltReason.ERROR, result.getReason());
+		assertEquals(2, result.getSteps());
+		assertEquals(2, result.getProgramCounter());
+		for(int max = 0; max < 3; max++) {
+			compare(code, new int[0], max);
+		}
+		MachineModel model = machine(code, new int[0]);
+		model.run(100);
+		assertFalse(model.isRunning());
+	}
+}
@@ -0,0 +1,61 @@
+package pippin;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes a program in the text pexe format that Loader reads: a line
+ * "op arg level" in hex per instruction, a line with -1, then a line
+ * "address value" in hex per data cell.
+ */
+public class TextProgramWriter implements ProgramSink {
+	private final BufferedWriter out;
+	private boolean inData = false;
+
+	/**
+	 * @param out where the text goes; it is closed with this writer
+	 */
+	public TextProgramWriter(Writer out) {
+		this.out = out instanceof BufferedWriter ? (BufferedWriter)out : new BufferedWriter(out);
+	}
+
+	@Override
+	public void instruction(int op, int arg, int level) throws IOException {
+		if(inData) {
+			throw new IllegalStateException("Instructions must come before the data");
+		}
+		out.write(Integer.toHexString(op));
+		out.write(' ');
+		out.write(Integer.toHexString(arg).toUpperCase());
+		out.write(' ');
+		out.write(Integer.toHexString(level));
+		out.newLine();
+	}
+
+	@Override
+	public void data(int address, int value) throws IOException {
+		separate();
+		out.write(Integer.toHexString(address).toUpperCase());
+		out.write(' ');
+		out.write(Integer.toHexString(value).toUpperCase());
+		out.newLine();
+	}
+
+	private void separate() throws IOException {
+		if(!inData) {
+			inData = true;
+			out.write("-1"); // the separator where the source has DATA
+			out.newLine();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			separate();
+		} finally {
+			out.close();
+		}
+	}
+}
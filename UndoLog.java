@@ -0,0 +1,170 @@
+package pippin;
+
+/**
+ * The history of the last steps of a machine, so that they can be undone
+ * one at a time. Each step is an entry of ints in a ring buffer:
+ * <pre>
+ * program counter, accumulator, start, count, count old cell values, length
+ * </pre>
+ * where start and count give the cells the instruction overwrote: one
+ * cell for STO, the window for ROT and none for everything else. The
+ * trailing length (5 + count) lets the newest entry be found from the
+ * head of the ring. When the ring is full the oldest entries are dropped,
+ * so the history is bounded by the capacity and recording a step is a
+ * handful of array writes.
+ */
+public class UndoLog {
+	/**
+	 * The default capacity in ints, a little over 200000 register only steps
+	 */
+	public static final int DEFAULT_CAPACITY = 1 << 20;
+	private static final int HEADER = 5;
+	private final int[] ring;
+	private final int mask;
+	private int head = 0;  // where the next entry starts
+	private int used = 0;  // the ints in use, ending at head
+	private int entries = 0;
+
+	public UndoLog() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity the size of the ring in ints, rounded up to a power of two
+	 */
+	public UndoLog(int capacity) {
+		if(capacity < HEADER || capacity > 1 << 30) {
+			throw new IllegalArgumentException("Undo log capacity must be from " + HEADER + " to 2^30");
+		}
+		ring = new int[Integer.highestOneBit(capacity - 1) << 1];
+		mask = ring.length - 1;
+	}
+
+	/**
+	 * @return the number of steps that can be undone
+	 */
+	public int size() {
+		return entries;
+	}
+
+	public boolean isEmpty() {
+		return entries == 0;
+	}
+
+	/**
+	 * Forgets the whole history, for instance when another program is loaded.
+	 */
+	public void clear() {
+		head = 0;
+		used = 0;
+		entries = 0;
+	}
+
+	/**
+	 * Records a step that only changes the registers.
+	 * @param programCounter the program counter before the step
+	 * @param accumulator the accumulator before the step
+	 * @return true, a register only step always fits
+	 */
+	public boolean record(int programCounter, int accumulator) {
+		makeRoom(HEADER);
+		int i = head;
+		ring[i] = programCounter;
+		ring[(i + 1) & mask] = accumulator;
+		ring[(i + 2) & mask] = 0;
+		ring[(i + 3) & mask] = 0;
+		ring[(i + 4) & mask] = HEADER;
+		head = (i + HEADER) & mask;
+		used += HEADER;
+		entries++;
+		return true;
+	}
+
+	/**
+	 * Records a step that overwrites count cells from start, saving their
+	 * values before the step. A step with more cells than the ring can hold
+	 * clears the history, since nothing before it could be undone anyway.
+	 * @param programCounter the program counter before the step
+	 * @param accumulator the accumulator before the step
+	 * @param memory the memory the step writes to
+	 * @param start the first cell the step writes
+	 * @param count the number of cells
+	 * @return false if the step did not fit and the history was cleared
+	 * instead, so there is no entry for it to undo
+	 */
+	public boolean record(int programCounter, int accumulator, Memory memory, int start, int count) {
+		int length = HEADER + count;
+		if(length > ring.length) {
+			clear();
+			return false;
+		}
+		makeRoom(length);
+		int i = head;
+		ring[i] = programCounter;
+		ring[(i + 1) & mask] = accumulator;
+		ring[(i + 2) & mask] = start;
+		ring[(i + 3) & mask] = count;
+		for(int k = 0; k < count; k++) {
+			ring[(i + 4 + k) & mask] = memory.getData(start + k);
+		}
+		ring[(i + length - 1) & mask] = length;
+		head = (i + length) & mask;
+		used += length;
+		entries++;
+		return true;
+	}
+
+	/**
+	 * Drops the oldest entries until length more ints fit.
+	 */
+	private void makeRoom(int length) {
+		while(used + length > ring.length) {
+			int tail = (head - used) & mask;
+			used -= HEADER + ring[(tail + 3) & mask];
+			entries--;
+		}
+	}
+
+	/**
+	 * @return the start of the newest entry
+	 */
+	private int newest() {
+		if(entries == 0) {
+			throw new IllegalStateException("There is no step to undo");
+		}
+		return (head - ring[(head - 1) & mask]) & mask;
+	}
+
+	/**
+	 * @return the program counter before the newest step
+	 */
+	public int lastProgramCounter() {
+		return ring[newest()];
+	}
+
+	/**
+	 * @return the accumulator before the newest step
+	 */
+	public int lastAccumulator() {
+		return ring[(newest() + 1) & mask];
+	}
+
+	/**
+	 * Puts back the cells the newest step overwrote and removes its entry.
+	 * The registers are read first with lastProgramCounter and
+	 * lastAccumulator.
+	 * @param memory the memory the step wrote to
+	 * @throws IllegalStateException if the log is empty
+	 */
+	public void undo(Memory memory) {
+		int i = newest();
+		int start = ring[(i + 2) & mask];
+		int count = ring[(i + 3) & mask];
+		for(int k = 0; k < count; k++) {
+			memory.setData(start + k, ring[(i + 4 + k) & mask]);
+		}
+		head = i;
+		used -= HEADER + count;
+		entries--;
+	}
+}
@@ -0,0 +1,147 @@
+package pippin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class UndoLogTester {
+
+	MachineModel machine;
+
+	@Before
+	public void setup() {
+		machine = new MachineModel();
+		machine.setUndoLog(new UndoLog());
+		Code code = new Code();
+		code.setCode(0x1, 0, 1);  // 0: LOD [0      count down the cell at 0
+		code.setCode(0x4, 1, 0);  // 1: SUB 1
+		code.setCode(0x2, 0, 1);  // 2: STO [0
+		code.setCode(0xC, 5, 0);  // 3: JMPZ 5
+		code.setCode(0xB, 0, 0);  // 4: JUMP 0
+		code.setCode(0xF, 0, 0);  // 5: HALT
+		code.setCode(0x14, 10, 1); // 6: ROT [A     rotate the window 20..24 by 1
+		machine.setCode(code);
+		machine.setData(0, 3);
+		machine.setData(10, 20);
+		machine.setData(11, 5);
+		machine.setData(12, 1);
+		for(int i = 20; i < 25; i++) {
+			machine.setData(i, i);
+		}
+		machine.setRunning(true);
+	}
+
+	@Test
+	// Tests that stepping back one step at a time goes back through every state
+	public void testStepBack() {
+		List<int[]> states = new ArrayList<>();
+		while(machine.isRunning()) {
+			states.add(state());
+			machine.step();
+		}
+		assertEquals(states.size(), machine.getUndoLog().size());
+		for(int i = states.size() - 1; i >= 0; i--) {
+			assertEquals(1, machine.stepBack(1));
+			assertArrayEquals("step " + i, states.get(i), state());
+		}
+		assertEquals(0, machine.stepBack(1));
+		assertTrue(machine.isRunning());
+	}
+
+	@Test
+	// Tests that run records the same history as step and can jump back
+	public void testRunThenJumpBack() {
+		int[] start = state();
+		RunResult result = machine.run(1000);
+		assertEquals(RunResult.HaltReason.HALTED, result.getReason());
+		assertEquals(result.getSteps(), machine.getUndoLog().size());
+		assertEquals(result.getSteps(), machine.stepBack(1000));
+		assertArrayEquals(start, state());
+		assertEquals(result.getSteps(), machine.run(1000).getSteps());
+	}
+
+	@Test
+	// Tests that the window of a ROT is put back, ROT does not move the
+	// program counter so it is simply stepped twice
+	public void testRot() {
+		machine.setProgramCounter(6);
+		int[] before = state();
+		machine.step();
+		int[] once = state();
+		machine.step();
+		assertEquals(20, machine.getData(22));
+		assertEquals(2, machine.stepBack(1) + machine.stepBack(1));
+		assertArrayEquals(before, state());
+		machine.step();
+		assertArrayEquals(once, state());
+	}
+
+	@Test
+	// Tests that a failing step leaves no history behind
+	public void testFailedStep() {
+		machine.setData(11, 600); // the ROT window goes past the end of memory
+		machine.step();
+		machine.setProgramCounter(6);
+		try {
+			machine.step();
+		} catch(IllegalArgumentException e) {
+			// the ROT failure
+		}
+		assertEquals(1, machine.getUndoLog().size());
+
+		// a window of 11 cells does not fit in a log of 8 ints, so the log is
+		// cleared, and the ROT then fails because the window holds the operands
+		int[] before = state();
+		machine.setUndoLog(new UndoLog(8));
+		machine.setData(10, 0);
+		machine.setData(11, 11);
+		machine.setProgramCounter(6);
+		machine.setRunning(true);
+		try {
+			machine.step();
+			fail("the ROT should fail");
+		} catch(IllegalArgumentException e) {
+			assertEquals("ROT failure 2", e.getMessage());
+		}
+		assertTrue(machine.getUndoLog().isEmpty());
+		machine.setProgramCounter(6);
+		RunResult result = machine.run(10);
+		assertEquals(RunResult.HaltReason.ERROR, result.getReason());
+		assertTrue(result.getError() instanceof IllegalArgumentException);
+		assertTrue(machine.getUndoLog().isEmpty());
+		assertEquals(before[2], machine.getData(0));
+	}
+
+	@Test
+	// Tests that a small log keeps only the newest steps
+	public void testBounded() {
+		UndoLog undo = new UndoLog(16);
+		machine.setUndoLog(undo);
+		machine.run(1000);
+		assertFalse(undo.isEmpty());
+		int kept = undo.size();
+		assertTrue(kept < 5);
+		int[] end = state();
+		assertEquals(kept, machine.stepBack(100));
+		machine.run(kept);
+		assertArrayEquals(end, state());
+	}
+
+	private int[] state() {
+		int[] state = new int[27];
+		state[0] = machine.getProgramCounter();
+		state[1] = machine.getAccumulator();
+		for(int i = 0; i < 25; i++) {
+			state[2 + i] = machine.getData(i);
+		}
+		return state;
+	}
+}
@@ -0,0 +1,56 @@
+package pippin;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+public class Verifier {
+	/**
+	 * Checks a loaded program once so that the interpreter does not have to
+	 * repeat the checks on every instruction. Each instruction must have a
+	 * known opcode, an indirection level its mnemonic allows (the same rules
+	 * the Assembler uses: noArgument, allowsImmediate and allowsIndirect)
+	 * and a JUMP or JMPZ with an immediate target must stay inside the program.
+	 * Errors appear in the map with the program line as the key and the
+	 * description of the error as the value.
+	 * @param code the program to check
+	 * @return the errors map, empty if the program is valid
+	 */
+	public static Map<Integer, String> verify(Code code) {
+		Map<Integer, String> errors = new TreeMap<>();
+		if(code == null) {
+			return errors;
+		}
+		int size = code.getProgramSize();
+		for(int i = 0; i < size; i++) {
+			long word = code.getWord(i);
+			int op = Code.op(word);
+			int level = Code.level(word);
+			String mnemonic = InstructionMap.mnemonics.get(op);
+			if(mnemonic == null) {
+				errors.put(i, "Error on line " + i + ": illegal opcode " + op);
+			} else if(!allowsLevel(mnemonic, level)) {
+				errors.put(i, "Error on line " + i + ": " + mnemonic
+						+ " does not allow indirection level " + level);
+			} else if(level == 0 && (mnemonic.equals("JUMP") || mnemonic.equals("JMPZ"))) {
+				int target = Code.arg(word);
+				if(target < 0 || target >= size) {
+					errors.put(i, "Error on line " + i + ": jump target " + target
+							+ " is outside the program");
+				}
+			}
+		}
+		return errors;
+	}
+
+	private static boolean allowsLevel(String mnemonic, int level) {
+		if(Assembler.noArgument.contains(mnemonic)) {
+			return level == 0;
+		}
+		switch(level) {
+		case 0: return Assembler.allowsImmediate.contains(mnemonic);
+		case 1: return true;
+		case 2: return Assembler.allowsIndirect.contains(mnemonic);
+		default: return false;
+		}
+	}
+}
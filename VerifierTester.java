@@ -0,0 +1,106 @@
+package pippin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+public class VerifierTester {
+
+	@Test
+	// Tests that a correct program has no errors
+	public void testValid() {
+		Code code = new Code();
+		code.setCode(InstructionSet.LOD, 5, 0);
+		code.setCode(InstructionSet.STO, 0, 2);
+		code.setCode(InstructionSet.JMPZ, 3, 0);
+		code.setCode(InstructionSet.JUMP, 100, 1);
+		code.setCode(InstructionSet.ROT, 0, 1);
+		code.setCode(InstructionSet.HALT, 0, 0);
+		assertTrue(Verifier.verify(code).isEmpty());
+	}
+
+	@Test
+	// Tests that each level an instruction does not allow is reported
+	public void testLevels() {
+		Code code = new Code();
+		code.setCode(InstructionSet.LOD, 5, 3);  // 0: past the last level
+		code.setCode(InstructionSet.STO, 5, 0);  // 1: immediate STO
+		code.setCode(InstructionSet.CMPZ, 5, 2); // 2: indirect CMPZ
+		code.setCode(InstructionSet.NOT, 5, 1);  // 3: NOT takes no argument
+		code.setCode(InstructionSet.ROT, 5, 0);  // 4: immediate ROT
+		code.setCode(InstructionSet.AND, 5, 2);  // 5: indirect AND
+		code.setCode(InstructionSet.ADD, 5, 2);  // 6: allowed
+		code.setCode(InstructionSet.HALT, 0, 1); // 7: HALT takes no argument
+		Map<Integer, String> errors = Verifier.verify(code);
+		assertEquals(7, errors.size());
+		assertFalse(errors.containsKey(6));
+		assertTrue(errors.get(0).contains("LOD does not allow indirection level 3"));
+		assertTrue(errors.get(4).contains("ROT does not allow indirection level 0"));
+	}
+
+	@Test
+	// Tests that opcodes no instruction has are reported
+	public void testOpcodes() {
+		Code code = new Code();
+		code.setCode(0xE, 0, 0);
+		code.setCode(0x13, 0, 1);
+		code.setCode(0x7FFF, 0, 0);
+		code.setCode(InstructionSet.HALT, 0, 0);
+		Map<Integer, String> errors = Verifier.verify(code);
+		assertEquals(3, errors.size());
+		assertTrue(errors.get(0).contains("illegal opcode 14"));
+		assertTrue(errors.get(2).contains("illegal opcode 32767"));
+	}
+
+	@Test
+	// Tests that immediate jump targets must be inside the program, while
+	// indirect ones are only known when the program runs
+	public void testJumpTargets() {
+		Code code = new Code();
+		code.setCode(InstructionSet.JUMP, 3, 0);   // 0: the last line
+		code.setCode(InstructionSet.JMPZ, 4, 0);   // 1: one past the end
+		code.setCode(InstructionSet.JUMP, -1, 0);  // 2: negative
+		code.setCode(InstructionSet.JMPZ, 500, 1); // 3: indirect
+		Map<Integer, String> errors = Verifier.verify(code);
+		assertEquals(2, errors.size());
+		assertTrue(errors.get(1).contains("jump target 4 is outside the program"));
+		assertTrue(errors.get(2).contains("jump target -1 is outside the program"));
+	}
+
+	@Test
+	// Tests that a rejected program still runs, through the checked execute,
+	// which stops on the bad instruction when it is reached
+	public void testRejectedRuns() {
+		Code code = new Code();
+		code.setCode(InstructionSet.LOD, 5, 0);
+		code.setCode(InstructionSet.STO, 0, 0);
+		code.setCode(InstructionSet.HALT, 0, 0);
+		for(boolean compiling : new boolean[] {false, true}) {
+			MachineModel model = new MachineModel();
+			model.setCompiling(compiling);
+			model.setCode(code);
+			assertEquals(1, model.getVerificationErrors().size());
+			RunResult result = model.run(100);
+			assertEquals(RunResult.HaltReason.ERROR, result.getReason());
+			assertTrue(result.getError() instanceof IllegalArgumentException);
+			assertEquals("STO level must be 1 or 2", result.getError().getMessage());
+			assertEquals(1, result.getSteps());
+			assertEquals(5, result.getAccumulator());
+			assertEquals(0, model.getFusedInstructionCount());
+		}
+
+		// a bad line that is never reached does not stop the run
+		code = new Code();
+		code.setCode(InstructionSet.LOD, 5, 0);
+		code.setCode(InstructionSet.HALT, 0, 0);
+		code.setCode(InstructionSet.JUMP, 50, 0);
+		MachineModel model = new MachineModel();
+		model.setCode(code);
+		assertFalse(model.getVerificationErrors().isEmpty());
+		assertEquals(RunResult.HaltReason.HALTED, model.run(100).getReason());
+	}
+}